@@ -26,24 +26,39 @@
 package george.criteriaapi.entity;
 
 import java.io.Serializable;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Version;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.CacheIsolationType;
 
 /**
  *
  * @author George Shumakov <george.shumakov@gmail.com>
  */
 @Entity
-@Table(name = "EMPLOYEE_CAPI")
+@Table(name = "EMPLOYEE_CAPI", indexes = {
+    @Index(name = "EMPLOYEE_CAPI_DEG_IDX", columnList = "DEG"),
+    @Index(name = "EMPLOYEE_CAPI_ENAME_IDX", columnList = "ENAME")})
+@Cacheable
+@Cache(type = CacheType.SOFT_WEAK, size = 1000, expiry = 60000, isolation = CacheIsolationType.SHARED)
 public class Employee implements Serializable, BEntity {
 
     private static final long serialVersionUID = 1L;
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TableGenerator(name = "EMPLOYEE_CAPI_SEQ", table = "SEQUENCE", pkColumnName = "SEQ_NAME",
+            valueColumnName = "SEQ_COUNT", allocationSize = 1000)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "EMPLOYEE_CAPI_SEQ")
     private Long id;
+    @Version
+    private Long version;
     private String ename;
     private double salary;
     private String deg;
@@ -91,6 +106,14 @@ public class Employee implements Serializable, BEntity {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public int hashCode() {
         int hash = 0;
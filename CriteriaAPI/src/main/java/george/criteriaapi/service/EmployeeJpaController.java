@@ -25,18 +25,54 @@
  */
 package george.criteriaapi.service;
 
+import george.common.CacheMode;
+import george.common.EntityCursors;
+import george.common.EntityLookups;
+import george.common.KeysetPage;
+import george.common.ParallelScan;
+import george.common.Patch;
+import george.common.ResultCache;
+import george.common.ResultCache.Reads;
 import george.criteriaapi.entity.BEntity;
 import george.criteriaapi.entity.Employee;
+import george.criteriaapi.entity.Employee_;
 import george.criteriaapi.service.exceptions.NonexistentEntityException;
+import george.criteriaapi.service.exceptions.StaleEntityException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.Persistence;
+import javax.persistence.RollbackException;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Root;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.SingularAttribute;
 
 /**
  *
@@ -44,7 +80,10 @@ import javax.persistence.criteria.Root;
  */
 public class EmployeeJpaController extends Thread implements Serializable {
 
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
     private EntityManagerFactory emf = null;
+    private ResultCache resultCache = null;
 
     public static void main(String[] args) {
         EntityManagerFactory emf = null;
@@ -56,6 +95,10 @@ public class EmployeeJpaController extends Thread implements Serializable {
             Employee emp2 = new Employee (Long.valueOf(2), "Second name", 12, "Something other");
             ctrl.create(emp1, emp2);
             ctrl.displayInfo();
+            BulkCreateReport report = ctrl.bulkCreate(LongStream.rangeClosed(3, 10002)
+                    .mapToObj((id) -> new Employee(id, "Name " + id, 1000 + id % 100, "Bulk")));
+            System.out.println("Bulk create: " + report);
+            System.out.printf("Employee count %d\n", ctrl.getEmployeeCount());
         } finally {
             closeEMF(emf);
         }
@@ -86,10 +129,42 @@ public class EmployeeJpaController extends Thread implements Serializable {
         this.emf = emf;
     }
 
+    public EmployeeJpaController(EntityManagerFactory emf, ResultCache resultCache) {
+        this.emf = emf;
+        this.resultCache = resultCache;
+    }
+
     public EntityManager getEntityManager() {
         return emf.createEntityManager();
     }
 
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    private <T> T cached(String key, Reads reads, Supplier<T> loader) {
+        return resultCache == null ? loader.get() : resultCache.get(key, Employee.class, reads, loader);
+    }
+
+    private <T extends Employee> List<T> cachedList(String key, Reads reads, Supplier<List<T>> loader) {
+        if (resultCache == null) {
+            return loader.get();
+        }
+        return resultCache.getEntities(key, emf, Employee.class, reads, loader);
+    }
+
+    private void rowsChanged(Class<?> type) {
+        if (resultCache != null) {
+            resultCache.rowsChanged(type);
+        }
+    }
+
+    private void valuesChanged(Class<?> type) {
+        if (resultCache != null) {
+            resultCache.valuesChanged(type);
+        }
+    }
+
     public void create(BEntity... models) {
         if (null != models && models.length > 0) {
         EntityManager em = null;
@@ -104,33 +179,214 @@ public class EmployeeJpaController extends Thread implements Serializable {
             if (em != null) {
                 em.close();
             }
+            rowsChanged(Employee.class);
         }
         }
     }
 
-    public void edit(Employee employee) throws NonexistentEntityException, Exception {
+    public <T extends BEntity> BulkCreateReport bulkCreate(Stream<T> models) {
+        return createInChunks(models, DEFAULT_BATCH_SIZE);
+    }
+
+    public <T extends BEntity> BulkCreateReport bulkCreate(Stream<T> models, int batchSize) {
+        return createInChunks(models, batchSize);
+    }
+
+    /**
+     * Persists a large number of models in chunks of {@code batchSize}. Every
+     * chunk is flushed as JDBC batches, the persistence context is cleared and
+     * the chunk is committed on its own, so memory stays bounded. A failing
+     * chunk is rolled back; chunks committed before it are kept.
+     */
+    public BulkCreateReport bulkCreate(Iterable<? extends BEntity> models, int batchSize) {
+        return createInChunks(models, batchSize);
+    }
+
+    private <T extends BEntity> BulkCreateReport createInChunks(Stream<T> models, int batchSize) {
+        try {
+            Iterable<T> iterable = models::iterator;
+            return createInChunks(iterable, batchSize);
+        } finally {
+            models.close();
+        }
+    }
+
+    private BulkCreateReport createInChunks(Iterable<? extends BEntity> models, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        final long start = System.nanoTime();
+        long rows = 0;
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            int pending = 0;
+            for (final BEntity model : models) {
+                if (pending == 0) {
+                    em.getTransaction().begin();
+                }
+                em.persist(model);
+                if (++pending == batchSize) {
+                    commitChunk(em);
+                    rows += pending;
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                commitChunk(em);
+                rows += pending;
+            }
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+            rowsChanged(Employee.class);
+        }
+        return new BulkCreateReport(rows, System.nanoTime() - start);
+    }
+
+    private static void commitChunk(EntityManager em) {
+        em.flush();
+        em.clear();
+        em.getTransaction().commit();
+    }
+
+    /**
+     * Merges {@code employee} with a version-checked UPDATE. Throws
+     * StaleEntityException when the employee was changed or removed since
+     * {@code employee} was read.
+     */
+    public void edit(Employee employee) throws StaleEntityException, Exception {
         EntityManager em = null;
         try {
             em = getEntityManager();
             em.getTransaction().begin();
             employee = em.merge(employee);
             em.getTransaction().commit();
-        } catch (Exception ex) {
-            String msg = ex.getLocalizedMessage();
-            if (msg == null || msg.length() == 0) {
-                Long id = employee.getId();
-                if (findEmployee(id) == null) {
-                    throw new NonexistentEntityException("The employee with id " + id + " no longer exists.");
-                }
+        } catch (OptimisticLockException ex) {
+            throw stale(employee.getId(), ex);
+        } catch (RollbackException ex) {
+            if (ex.getCause() instanceof OptimisticLockException) {
+                throw stale(employee.getId(), ex.getCause());
             }
             throw ex;
         } finally {
             if (em != null) {
                 em.close();
             }
+            valuesChanged(Employee.class);
         }
     }
 
+    /**
+     * Writes the attributes in {@code patch} to the employee with id {@code id}
+     * with one UPDATE, without loading the employee first. Returns false when
+     * there is no such employee.
+     */
+    public boolean patchEmployee(Long id, Patch<Employee> patch) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            Query q = patch.toQuery(em, Employee.class, id);
+            q.setHint(QueryHints.BATCH_WRITING, HintValues.FALSE);
+            em.getTransaction().begin();
+            int rows = q.executeUpdate();
+            em.getTransaction().commit();
+            emf.getCache().evict(Employee.class, id);
+            return rows == 1;
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+            valuesChanged(Employee.class);
+        }
+    }
+
+    public Map<Long, Integer> patchEmployees(Map<Long, Patch<Employee>> patches) {
+        return patchInChunks(patches, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Writes one patch per employee id, e.g. a new salary for each, in
+     * transactions of {@code batchSize} patches. Patches of the same
+     * attributes produce the same UPDATE, so JDBC batch writing sends a chunk
+     * in few round trips and no employee is loaded. A failing chunk is rolled
+     * back; chunks committed before it are kept.
+     *
+     * Returns the number of rows updated for every id, in the order of
+     * {@code patches}: 1, or 0 for an id without an employee. A batched
+     * UPDATE does not report its own row count, so before a chunk commits its
+     * ids are read back with IN queries; the rows the chunk updated are
+     * locked by then. Only the updated employees are evicted from the shared
+     * cache.
+     */
+    public Map<Long, Integer> patchEmployees(Map<Long, Patch<Employee>> patches, int batchSize) {
+        return patchInChunks(patches, batchSize);
+    }
+
+    private Map<Long, Integer> patchInChunks(Map<Long, Patch<Employee>> patches, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        Map<Long, Integer> rows = new LinkedHashMap<>();
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            List<Long> chunk = new ArrayList<>();
+            for (Map.Entry<Long, Patch<Employee>> patch : patches.entrySet()) {
+                if (chunk.isEmpty()) {
+                    em.getTransaction().begin();
+                }
+                patch.getValue().toQuery(em, Employee.class, patch.getKey()).executeUpdate();
+                chunk.add(patch.getKey());
+                if (chunk.size() == batchSize) {
+                    commitChunk(em, chunk, rows);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                commitChunk(em, chunk, rows);
+            }
+            return rows;
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+            for (Map.Entry<Long, Integer> updated : rows.entrySet()) {
+                if (updated.getValue() > 0) {
+                    emf.getCache().evict(Employee.class, updated.getKey());
+                }
+            }
+            valuesChanged(Employee.class);
+        }
+    }
+
+    private static void commitChunk(EntityManager em, List<Long> chunk, Map<Long, Integer> rows) {
+        Set<Long> found = new HashSet<>();
+        for (int from = 0; from < chunk.size(); from += EntityLookups.MAX_IN_LIST) {
+            CriteriaQuery<Long> cq = em.getCriteriaBuilder().createQuery(Long.class);
+            Root<Employee> rt = cq.from(Employee.class);
+            cq.select(rt.get(Employee_.id))
+                    .where(rt.get(Employee_.id).in(chunk.subList(from, Math.min(from + EntityLookups.MAX_IN_LIST,
+                            chunk.size()))));
+            found.addAll(em.createQuery(cq).getResultList());
+        }
+        em.getTransaction().commit();
+        for (Long id : chunk) {
+            rows.put(id, found.contains(id) ? 1 : 0);
+        }
+    }
+
+    private static StaleEntityException stale(Long id, Throwable cause) {
+        return new StaleEntityException("The employee with id " + id + " was changed or removed since it was read.", cause);
+    }
+
     public void destroy(Long id) throws NonexistentEntityException {
         EntityManager em = null;
         try {
@@ -146,6 +402,80 @@ public class EmployeeJpaController extends Thread implements Serializable {
             }
             em.remove(employee);
             em.getTransaction().commit();
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+            rowsChanged(Employee.class);
+        }
+    }
+
+    /**
+     * Multiplies the salary of every employee matching {@code filter} by
+     * {@code factor} with a single UPDATE statement, without loading any
+     * entity. Returns the number of updated rows.
+     */
+    public int updateSalaries(EmployeeFilter filter, double factor) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaUpdate<Employee> cu = cb.createCriteriaUpdate(Employee.class);
+            Root<Employee> rt = cu.from(Employee.class);
+            cu.set(rt.get(Employee_.salary), cb.prod(rt.get(Employee_.salary), factor));
+            // bulk updates skip optimistic locking, so bump the version by hand
+            cu.set(rt.get(Employee_.version), cb.sum(rt.get(Employee_.version), 1L));
+            cu.where(filter.toPredicate(cb, rt));
+            int rows = executeBulk(em, em.createQuery(cu));
+            valuesChanged(Employee.class);
+            return rows;
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Sets the deg of every employee matching {@code filter} with a single
+     * UPDATE statement. Returns the number of updated rows.
+     */
+    public int updateDeg(EmployeeFilter filter, String deg) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaUpdate<Employee> cu = cb.createCriteriaUpdate(Employee.class);
+            Root<Employee> rt = cu.from(Employee.class);
+            cu.set(rt.get(Employee_.deg), deg);
+            // bulk updates skip optimistic locking, so bump the version by hand
+            cu.set(rt.get(Employee_.version), cb.sum(rt.get(Employee_.version), 1L));
+            cu.where(filter.toPredicate(cb, rt));
+            int rows = executeBulk(em, em.createQuery(cu));
+            valuesChanged(Employee.class);
+            return rows;
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Deletes every employee matching {@code filter} with a single DELETE
+     * statement. Returns the number of deleted rows.
+     */
+    public int destroyAll(EmployeeFilter filter) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaDelete<Employee> cd = cb.createCriteriaDelete(Employee.class);
+            Root<Employee> rt = cd.from(Employee.class);
+            cd.where(filter.toPredicate(cb, rt));
+            int rows = executeBulk(em, em.createQuery(cd));
+            rowsChanged(Employee.class);
+            return rows;
         } finally {
             if (em != null) {
                 em.close();
@@ -153,12 +483,124 @@ public class EmployeeJpaController extends Thread implements Serializable {
         }
     }
 
+    /**
+     * Bulk statements bypass the persistence context, so the shared cache is
+     * evicted for Employee once they are committed; the caller invalidates the
+     * result cache. Batch writing is turned off for the statement because a
+     * batched statement does not report its row count.
+     */
+    private int executeBulk(EntityManager em, Query q) {
+        q.setHint(QueryHints.BATCH_WRITING, HintValues.FALSE);
+        em.getTransaction().begin();
+        int rows = q.executeUpdate();
+        em.getTransaction().commit();
+        emf.getCache().evict(Employee.class);
+        return rows;
+    }
+
     public List<Employee> findEmployeeEntities() {
-        return findEmployeeEntities(true, -1, -1);
+        return cachedList("findEmployeeEntities", Reads.ROWS, () -> findEmployeeEntities(true, -1, -1));
     }
 
     public List<Employee> findEmployeeEntities(int maxResults, int firstResult) {
-        return findEmployeeEntities(false, maxResults, firstResult);
+        return cachedList("findEmployeeEntities:" + maxResults + ":" + firstResult, Reads.ROWS,
+                () -> findEmployeeEntities(false, maxResults, firstResult));
+    }
+
+    /**
+     * Employees matching {@code filter}. Conditions on deg and on a prefix of
+     * ename are answered from the indexes declared on {@link Employee}
+     * instead of a table scan.
+     */
+    public List<Employee> findEmployeeEntities(EmployeeFilter filter) {
+        return findEmployeeEntitiesMatching(filter);
+    }
+
+    public List<Employee> findEmployeeEntities(EmployeeFilter filter, int maxResults, int firstResult) {
+        return cachedList("findEmployeeEntities:" + filter + ":" + maxResults + ":" + firstResult, Reads.VALUES,
+                () -> findEmployeeEntities(filter, false, maxResults, firstResult));
+    }
+
+    public List<Employee> findEmployeeEntitiesByDeg(String deg) {
+        return findEmployeeEntitiesMatching(new EmployeeFilter().deg(deg));
+    }
+
+    public List<Employee> findEmployeeEntitiesByEnamePrefix(String enamePrefix) {
+        return findEmployeeEntitiesMatching(new EmployeeFilter().enamePrefix(enamePrefix));
+    }
+
+    private List<Employee> findEmployeeEntitiesMatching(EmployeeFilter filter) {
+        return cachedList("findEmployeeEntities:" + filter, Reads.VALUES,
+                () -> findEmployeeEntities(filter, true, -1, -1));
+    }
+
+    private List<Employee> findEmployeeEntities(EmployeeFilter filter, boolean all, int maxResults,
+            int firstResult) {
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Employee> cq = cb.createQuery(Employee.class);
+            Root<Employee> rt = cq.from(Employee.class);
+            cq.select(rt).where(filter.toPredicate(cb, rt));
+            TypedQuery<Employee> q = em.createQuery(cq);
+            if (!all) {
+                q.setMaxResults(maxResults);
+                q.setFirstResult(firstResult);
+            }
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Keyset pagination: returns up to {@code maxResults} employees with an id
+     * greater than {@code lastId}, in id order. Unlike
+     * {@link #findEmployeeEntities(int, int)} the cost does not grow with the page
+     * depth, because the primary key index is used to seek to the first row.
+     * Pass {@code null} for the first page.
+     */
+    public KeysetPage<Employee> findEmployeeEntitiesAfter(Long lastId, int maxResults) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maxResults must be positive: " + maxResults);
+        }
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Employee> cq = cb.createQuery(Employee.class);
+            Root<Employee> rt = cq.from(Employee.class);
+            if (lastId != null) {
+                cq.where(cb.greaterThan(rt.get(Employee_.id), lastId));
+            }
+            cq.select(rt).orderBy(cb.asc(rt.get(Employee_.id)));
+            TypedQuery<Employee> q = em.createQuery(cq);
+            q.setMaxResults(maxResults + 1);
+            List<Employee> employees = q.getResultList();
+            if (employees.size() > maxResults) {
+                employees = new ArrayList<>(employees.subList(0, maxResults));
+                return new KeysetPage<>(employees, employees.get(maxResults - 1).getId());
+            }
+            return new KeysetPage<>(employees, null);
+        } finally {
+            em.close();
+        }
+    }
+
+    public Stream<Employee> streamEmployeeEntities() {
+        return streamEmployeeEntities(EntityCursors.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Streams every employee through a database cursor reading
+     * {@code fetchSize} rows at a time, in constant memory. The stream holds
+     * an EntityManager and a connection until it is closed, so use it in a
+     * try-with-resources block.
+     */
+    public Stream<Employee> streamEmployeeEntities(int fetchSize) {
+        EntityManager em = getEntityManager();
+        CriteriaQuery<Employee> cq = em.getCriteriaBuilder().createQuery(Employee.class);
+        cq.select(cq.from(Employee.class));
+        return EntityCursors.stream(em, em.createQuery(cq), fetchSize);
     }
 
     private List<Employee> findEmployeeEntities(boolean all, int maxResults, int firstResult) {
@@ -179,17 +621,186 @@ public class EmployeeJpaController extends Thread implements Serializable {
         }
     }
 
-    public Employee findEmployee(Long id) {
+    public List<EmployeeSummary> findEmployeeSummaries() {
+        return findEmployeeSummaries(true, -1, -1);
+    }
+
+    public List<EmployeeSummary> findEmployeeSummaries(int maxResults, int firstResult) {
+        return findEmployeeSummaries(false, maxResults, firstResult);
+    }
+
+    private List<EmployeeSummary> findEmployeeSummaries(boolean all, int maxResults, int firstResult) {
         EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<EmployeeSummary> cq = cb.createQuery(EmployeeSummary.class);
+            Root<Employee> rt = cq.from(Employee.class);
+            cq.select(cb.construct(EmployeeSummary.class,
+                    rt.get(Employee_.id), rt.get(Employee_.ename), rt.get(Employee_.salary)));
+            TypedQuery<EmployeeSummary> q = em.createQuery(cq);
+            if (!all) {
+                q.setMaxResults(maxResults);
+                q.setFirstResult(firstResult);
+            }
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Reads only the given columns of every employee, e.g.
+     * {@code findEmployeeColumns(Employee_.id, Employee_.deg)}. Each tuple
+     * element is aliased with the attribute name, so it can be read by
+     * position or by {@code tuple.get("deg")}.
+     */
+    @SafeVarargs
+    public final List<Tuple> findEmployeeColumns(SingularAttribute<Employee, ?>... columns) {
+        return findEmployeeColumns(true, -1, -1, columns);
+    }
+
+    @SafeVarargs
+    public final List<Tuple> findEmployeeColumns(int maxResults, int firstResult,
+            SingularAttribute<Employee, ?>... columns) {
+        return findEmployeeColumns(false, maxResults, firstResult, columns);
+    }
+
+    private List<Tuple> findEmployeeColumns(boolean all, int maxResults, int firstResult,
+            SingularAttribute<Employee, ?>[] columns) {
+        if (columns == null || columns.length == 0) {
+            throw new IllegalArgumentException("At least one column is required");
+        }
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Tuple> cq = cb.createTupleQuery();
+            Root<Employee> rt = cq.from(Employee.class);
+            Selection<?>[] selections = new Selection<?>[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                selections[i] = rt.get(columns[i]).alias(columns[i].getName());
+            }
+            cq.multiselect(selections);
+            TypedQuery<Tuple> q = em.createQuery(cq);
+            if (!all) {
+                q.setMaxResults(maxResults);
+                q.setFirstResult(firstResult);
+            }
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Salary count, sum, min, max and average per deg, in deg order. The
+     * grouping runs in the database, so one row per deg is read instead of
+     * every employee.
+     */
+    public List<SalaryStats<String>> getSalaryStatsByDeg() {
+        return salaryStatsByDeg(new EmployeeFilter());
+    }
+
+    public List<SalaryStats<String>> getSalaryStatsByDeg(EmployeeFilter filter) {
+        return salaryStatsByDeg(filter);
+    }
+
+    private List<SalaryStats<String>> salaryStatsByDeg(EmployeeFilter filter) {
+        return cached("getSalaryStatsByDeg:" + filter, Reads.VALUES,
+                () -> Collections.unmodifiableList(salaryStats((rt) -> rt.get(Employee_.deg), filter)));
+    }
+
+    private <K> List<SalaryStats<K>> salaryStats(Function<Root<Employee>, Expression<K>> groupBy,
+            EmployeeFilter filter) {
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Tuple> cq = cb.createTupleQuery();
+            Root<Employee> rt = cq.from(Employee.class);
+            Expression<K> key = groupBy.apply(rt);
+            Path<Double> salary = rt.get(Employee_.salary);
+            Expression<Long> count = cb.count(rt);
+            Expression<Double> sum = cb.sum(salary);
+            Expression<Double> min = cb.min(salary);
+            Expression<Double> max = cb.max(salary);
+            cq.multiselect(key, count, sum, min, max)
+                    .where(filter.toPredicate(cb, rt))
+                    .groupBy(key)
+                    .orderBy(cb.asc(key));
+            List<SalaryStats<K>> stats = new ArrayList<>();
+            for (Tuple row : em.createQuery(cq).getResultList()) {
+                stats.add(new SalaryStats<>(row.get(key), row.get(count), row.get(sum), row.get(min),
+                        row.get(max)));
+            }
+            return stats;
+        } finally {
+            em.close();
+        }
+    }
+
+    public <R> R scanEmployeeEntities(Collector<? super Employee, ?, R> collector) {
+        List<Class<? extends Employee>> types = Collections.singletonList(Employee.class);
+        return scan(types, collector, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parallel full scan: splits the id space into ranges and reads each
+     * range through its own EntityManager and cursor on one of
+     * {@code parallelism} fork-join workers, feeding every employee to
+     * {@code collector}, e.g. {@code Collectors.counting()} or
+     * {@code Collectors.groupingBy(...)}. Each worker holds a connection, so
+     * keep {@code parallelism} within the connection pool.
+     */
+    public <R> R scanEmployeeEntities(Collector<? super Employee, ?, R> collector, int parallelism) {
+        List<Class<? extends Employee>> types = Collections.singletonList(Employee.class);
+        return scan(types, collector, parallelism);
+    }
+
+    private <T, R> R scan(List<Class<? extends T>> types, Collector<? super T, ?, R> collector, int parallelism) {
+        return ParallelScan.scan(emf, types, Employee_.id.getName(), collector, parallelism,
+                EntityCursors.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Multi-get: looks up every id in {@code ids} through one EntityManager
+     * and bounded IN-list queries. The result keeps the order of {@code ids};
+     * an empty Optional marks an id with no employee.
+     */
+    public List<Optional<Employee>> findEmployees(Collection<Long> ids) {
+        EntityManager em = getEntityManager();
+        try {
+            return EntityLookups.findAll(em, Employee.class, Employee_.id, Employee::getId, ids);
+        } finally {
+            em.close();
+        }
+    }
+
+    public Employee findEmployee(Long id) {
+        return findEmployee(id, CacheMode.USE.hints());
+    }
+
+    /**
+     * Looks up one employee and uses the shared cache as {@code mode} says:
+     * {@link CacheMode#BYPASS} reads the row without touching the cache and
+     * {@link CacheMode#REFRESH} also replaces the cached copy with it.
+     */
+    public Employee findEmployee(Long id, CacheMode mode) {
+        return findEmployee(id, mode.hints());
+    }
 
+    private Employee findEmployee(Long id, Map<String, Object> hints) {
+        EntityManager em = getEntityManager();
         try {
-            return em.find(Employee.class, id);
+            return em.find(Employee.class, id, hints);
         } finally {
             em.close();
         }
     }
 
     public int getEmployeeCount() {
+        return cached("getEmployeeCount", Reads.ROWS, this::countEmployees);
+    }
+
+    private int countEmployees() {
         EntityManager em = getEntityManager();
         try {
             CriteriaQuery cq = em.getCriteriaBuilder().createQuery();
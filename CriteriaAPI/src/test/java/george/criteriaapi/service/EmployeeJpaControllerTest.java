@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.criteriaapi.service;
+
+import george.common.EntityLookups;
+import george.common.Patch;
+import george.common.QueryPlans;
+import george.common.ResultCache;
+import george.common.SqlLog;
+import george.criteriaapi.entity.Employee;
+import george.criteriaapi.entity.Employee_;
+import george.criteriaapi.service.exceptions.StaleEntityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks with Derby's runtime statistics that the employee finders read
+ * through the indexes declared on {@link Employee}, how the finders use
+ * a {@link ResultCache}, and what patches write and evict.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class EmployeeJpaControllerTest {
+
+    private static final int EMPLOYEES = 200;
+    private static final int DEGS = 20;
+
+    private static EntityManagerFactory emf;
+    private static SqlLog sql;
+
+    @BeforeClass
+    public static void createEmployees() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+        properties.put("javax.persistence.jdbc.url", "jdbc:derby:memory:EmployeeJpaControllerTest;create=true");
+        emf = Persistence.createEntityManagerFactory("CriteriaAPI", properties);
+        Employee[] employees = new Employee[EMPLOYEES];
+        for (int i = 0; i < EMPLOYEES; i++) {
+            employees[i] = new Employee(null, "Employee " + i, 1000 + i, "Deg " + i % DEGS);
+        }
+        new EmployeeJpaController(emf).create(employees);
+        sql = SqlLog.install(emf);
+    }
+
+    @AfterClass
+    public static void close() {
+        emf.close();
+    }
+
+    @Test
+    public void findByDegReadsTheDegIndex() {
+        assertThat(indexesUsedBy(controller -> assertEquals(EMPLOYEES / DEGS,
+                controller.findEmployeeEntitiesByDeg("Deg 7").size())), hasItem("EMPLOYEE_CAPI_DEG_IDX"));
+    }
+
+    @Test
+    public void findByEnamePrefixReadsTheEnameIndex() {
+        assertThat(indexesUsedBy(controller -> assertEquals(11,
+                controller.findEmployeeEntitiesByEnamePrefix("Employee 12").size())),
+                hasItem("EMPLOYEE_CAPI_ENAME_IDX"));
+    }
+
+    @Test
+    public void patchesBumpTheVersionAndEvictOnlyThePatchedEmployees() {
+        EmployeeJpaController controller = new EmployeeJpaController(emf);
+        List<Employee> employees = controller.findEmployeeEntitiesByDeg("Deg 5");
+        Employee first = employees.get(0);
+        Employee second = employees.get(1);
+        Employee untouched = employees.get(2);
+        Map<Long, Patch<Employee>> patches = new LinkedHashMap<>();
+        patches.put(first.getId(), new Patch<Employee>().set(Employee_.salary, 7000.0));
+        patches.put(-1L, new Patch<Employee>().set(Employee_.salary, 7000.0));
+        patches.put(second.getId(), new Patch<Employee>().set(Employee_.salary, 7001.0));
+
+        Map<Long, Integer> rows = controller.patchEmployees(patches, 2);
+
+        Map<Long, Integer> expected = new LinkedHashMap<>();
+        expected.put(first.getId(), 1);
+        expected.put(-1L, 0);
+        expected.put(second.getId(), 1);
+        assertEquals(expected, rows);
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(rows.keySet()));
+        assertFalse(emf.getCache().contains(Employee.class, first.getId()));
+        assertFalse(emf.getCache().contains(Employee.class, second.getId()));
+        assertTrue(emf.getCache().contains(Employee.class, untouched.getId()));
+        Employee patched = controller.findEmployee(first.getId());
+        assertEquals(7000, patched.getSalary(), 0);
+        assertEquals(Long.valueOf(first.getVersion() + 1), patched.getVersion());
+        assertEquals(Long.valueOf(second.getVersion() + 1), controller.findEmployee(second.getId()).getVersion());
+        assertEquals(untouched.getVersion(), controller.findEmployee(untouched.getId()).getVersion());
+    }
+
+    @Test
+    public void patchBumpsTheVersionSoAStaleEditFails() throws Exception {
+        EmployeeJpaController controller = new EmployeeJpaController(emf);
+        Employee employee = controller.findEmployeeEntitiesByDeg("Deg 6").get(0);
+        assertTrue(controller.patchEmployee(employee.getId(), new Patch<Employee>().set(Employee_.deg, "Deg 6")));
+        assertEquals(Long.valueOf(employee.getVersion() + 1), controller.findEmployee(employee.getId()).getVersion());
+        employee.setSalary(1);
+        try {
+            controller.edit(employee);
+            fail("An edit of the employee as read before the patch succeeded");
+        } catch (StaleEntityException ex) {
+            assertFalse(controller.findEmployee(employee.getId()).getSalary() == 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void patchRejectsTheId() {
+        new Patch<Employee>().set(Employee_.id, 1L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void patchRejectsTheVersion() {
+        new Patch<Employee>().set(Employee_.version, 1L);
+    }
+
+    @Test
+    public void listsLongerThanAnInListAreNotCached() {
+        ResultCache cache = new ResultCache(1, TimeUnit.MINUTES, 100);
+        EmployeeJpaController controller = new EmployeeJpaController(emf, cache);
+        Employee[] more = new Employee[EntityLookups.MAX_IN_LIST];
+        for (int i = 0; i < more.length; i++) {
+            more[i] = new Employee(null, "More " + i, 1000, "Deg more");
+        }
+        controller.create(more);
+        try {
+            controller.findEmployeeEntities();
+            controller.findEmployeeEntities();
+            assertEquals(0, cache.getHitCount());
+            assertEquals(0, cache.size());
+        } finally {
+            controller.destroyAll(new EmployeeFilter().deg("Deg more"));
+        }
+    }
+
+    @Test
+    public void cachedFinderHandsEveryCallerItsOwnEmployees() {
+        ResultCache cache = new ResultCache(1, TimeUnit.MINUTES, 100);
+        EmployeeJpaController controller = new EmployeeJpaController(emf, cache);
+        List<Employee> first = controller.findEmployeeEntitiesByDeg("Deg 3");
+        String ename = first.get(0).getEname();
+        first.get(0).setEname("changed by the first caller");
+        List<Employee> second = controller.findEmployeeEntitiesByDeg("Deg 3");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(first.get(0).getId(), second.get(0).getId());
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals(ename, second.get(0).getEname());
+    }
+
+    @Test
+    public void cachedListHitSendsNoMoreSelectsThanTheMiss() {
+        ResultCache cache = new ResultCache(1, TimeUnit.MINUTES, 100);
+        EmployeeJpaController controller = new EmployeeJpaController(emf, cache);
+        emf.getCache().evictAll();
+        sql.clear();
+        assertEquals(EMPLOYEES, controller.findEmployeeEntities().size());
+        int miss = sql.selects().size();
+        emf.getCache().evictAll();
+        sql.clear();
+        assertEquals(EMPLOYEES, controller.findEmployeeEntities().size());
+        assertEquals(1, cache.getHitCount());
+        assertTrue(sql.selects() + " after " + miss, sql.selects().size() <= miss);
+        sql.clear();
+        assertEquals(EMPLOYEES, controller.findEmployeeEntities().size());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(sql.selects().toString(), 0, sql.selects().size());
+    }
+
+    @Test
+    public void editKeepsCachedCountsAndDropsFilteredLists() throws Exception {
+        ResultCache cache = new ResultCache(1, TimeUnit.MINUTES, 100);
+        EmployeeJpaController controller = new EmployeeJpaController(emf, cache);
+        assertEquals(EMPLOYEES, controller.getEmployeeCount());
+        Employee employee = controller.findEmployeeEntitiesByDeg("Deg 4").get(0);
+        employee.setSalary(employee.getSalary() + 1);
+        controller.edit(employee);
+        assertEquals(EMPLOYEES, controller.getEmployeeCount());
+        controller.findEmployeeEntitiesByDeg("Deg 4");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    private static Iterable<String> indexesUsedBy(Consumer<EmployeeJpaController> finder) {
+        try (QueryPlans plans = QueryPlans.record(emf)) {
+            finder.accept(new EmployeeJpaController(emf) {
+                @Override
+                public EntityManager getEntityManager() {
+                    return plans.entityManager();
+                }
+            });
+            return plans.indexes();
+        }
+    }
+}
@@ -26,27 +26,40 @@
 package george.joinedtablestrategy.entities;
 
 import java.io.Serializable;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Version;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.CacheIsolationType;
 
 /**
  *
  * @author George Shumakov <george.shumakov@gmail.com>
  */
 @Entity
-@Table(name = "STAFFJ")
+@Table(name = "STAFFJ", indexes = @Index(name = "STAFFJ_SNAME_IDX", columnList = "SNAME"))
 @Inheritance(strategy = InheritanceType.JOINED)
+@Cacheable
+@Cache(type = CacheType.SOFT_WEAK, size = 500, isolation = CacheIsolationType.SHARED)
 public class Staff implements Serializable {
 
     private static final long serialVersionUID = 1L;
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TableGenerator(name = "STAFFJ_SEQ", table = "SEQUENCE", pkColumnName = "SEQ_NAME",
+            valueColumnName = "SEQ_COUNT", allocationSize = 100)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "STAFFJ_SEQ")
     private Long id;
+    @Version
+    private Long version;
     private String sname;
 
     public Staff(Long sid, String sname) {
@@ -75,6 +88,14 @@ public class Staff implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public int hashCode() {
         int hash = 0;
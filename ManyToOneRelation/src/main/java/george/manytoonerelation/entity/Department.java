@@ -6,11 +6,17 @@
 package george.manytoonerelation.entity;
 
 import java.io.Serializable;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Version;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.CacheIsolationType;
 
 /**
  *
@@ -18,12 +24,18 @@ import javax.persistence.Table;
  */
 @Entity
 @Table (name = "DEPARTAMENT_MTO")
+@Cacheable
+@Cache(type = CacheType.SOFT_WEAK, size = 256, isolation = CacheIsolationType.SHARED)
 public class Department implements Serializable {
 
     private static final long serialVersionUID = 1L;
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TableGenerator(name = "DEPARTMENT_MTO_SEQ", table = "SEQUENCE", pkColumnName = "SEQ_NAME",
+            valueColumnName = "SEQ_COUNT", allocationSize = 10)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "DEPARTMENT_MTO_SEQ")
     private Long id;
+    @Version
+    private Long version;
     private String name;
 
     public String getName() {
@@ -42,6 +54,14 @@ public class Department implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public int hashCode() {
         int hash = 0;
@@ -6,25 +6,41 @@
 package george.manytoonerelation.entity;
 
 import java.io.Serializable;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Version;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.CacheIsolationType;
 
 /**
  *
  * @author George Shumakov <george.shumakov@gmail.com>
  */
 @Entity
-@Table(name = "EMPLOYEE_MTO")
+@Table(name = "EMPLOYEE_MTO", indexes = {
+    @Index(name = "EMPLOYEE_MTO_DEG_IDX", columnList = "DEG"),
+    @Index(name = "EMPLOYEE_MTO_ENAME_IDX", columnList = "ENAME"),
+    @Index(name = "EMPLOYEE_MTO_DEPARTMENT_IDX", columnList = "DEPARTMENT_ID")})
+@Cacheable
+@Cache(type = CacheType.SOFT_WEAK, size = 1000, expiry = 60000, isolation = CacheIsolationType.SHARED)
 public class Employee implements Serializable {
 
     private static final long serialVersionUID = 1L;
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TableGenerator(name = "EMPLOYEE_MTO_SEQ", table = "SEQUENCE", pkColumnName = "SEQ_NAME",
+            valueColumnName = "SEQ_COUNT", allocationSize = 100)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "EMPLOYEE_MTO_SEQ")
     private Long id;
+    @Version
+    private Long version;
     private String ename;
 
     public String getEname() {
@@ -84,6 +100,14 @@ public class Employee implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public int hashCode() {
         int hash = 0;
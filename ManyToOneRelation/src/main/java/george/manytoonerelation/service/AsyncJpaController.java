@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.manytoonerelation.service;
+
+import george.common.Patch;
+import george.manytoonerelation.entity.Department;
+import george.manytoonerelation.entity.Employee;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Asynchronous facade over the Employee and Department controllers. Every
+ * call runs on a {@link BoundedExecutor} and returns a CompletableFuture, so
+ * independent lookups overlap:
+ *
+ * <pre>
+ * CompletableFuture&lt;Employee&gt; employee = async.findEmployee(id);
+ * CompletableFuture&lt;Department&gt; department = async.findDepartment(departmentId);
+ * CompletableFuture&lt;Integer&gt; count = async.getEmployeeCount();
+ * CompletableFuture.allOf(employee, department, count).join();
+ * </pre>
+ *
+ * Checked exceptions of the controllers complete the future exceptionally,
+ * wrapped in a CompletionException. The calls run on other threads, so they
+ * do not take part in a {@link UnitOfWork} of the caller.
+ * <p>
+ * A call returns at once while the executor has a free slot. Once it is
+ * saturated, the call blocks the caller until a slot frees up, or throws a
+ * RejectedExecutionException after the executor's timeout. Calls made from
+ * a callback that runs on the executor, e.g. in {@code thenCompose}, run in
+ * that thread and return when they are done.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class AsyncJpaController {
+
+    private interface Call<T> {
+
+        T call() throws Exception;
+    }
+
+    private final EmployeeJpaController employees;
+    private final DepartmentJpaController departments;
+    private final BoundedExecutor executor;
+
+    public AsyncJpaController(EmployeeJpaController employees, DepartmentJpaController departments,
+            BoundedExecutor executor) {
+        this.employees = employees;
+        this.departments = departments;
+        this.executor = executor;
+    }
+
+    public BoundedExecutor getExecutor() {
+        return executor;
+    }
+
+    private <T> CompletableFuture<T> async(Call<T> call) {
+        return executor.supply(() -> {
+            try {
+                return call.call();
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> create(Employee... employee) {
+        return async(() -> {
+            employees.create(employee);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> create(Department department) {
+        return async(() -> {
+            departments.create(department);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> edit(Employee employee) {
+        return async(() -> {
+            employees.edit(employee);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> edit(Department department) {
+        return async(() -> {
+            departments.edit(department);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> patchEmployee(Long id, Patch<Employee> patch) {
+        return async(() -> employees.patchEmployee(id, patch));
+    }
+
+    public CompletableFuture<Boolean> patchDepartment(Long id, Patch<Department> patch) {
+        return async(() -> departments.patchDepartment(id, patch));
+    }
+
+    public CompletableFuture<Void> destroyEmployee(Long id) {
+        return async(() -> {
+            employees.destroy(id);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> destroyDepartment(Long id) {
+        return async(() -> {
+            departments.destroy(id);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Employee> findEmployee(Long id) {
+        return async(() -> employees.findEmployee(id));
+    }
+
+    public CompletableFuture<Department> findDepartment(Long id) {
+        return async(() -> departments.findDepartment(id));
+    }
+
+    public CompletableFuture<List<Optional<Employee>>> findEmployees(Collection<Long> ids) {
+        return async(() -> employees.findEmployees(ids));
+    }
+
+    public CompletableFuture<List<Optional<Department>>> findDepartments(Collection<Long> ids) {
+        return async(() -> departments.findDepartments(ids));
+    }
+
+    public CompletableFuture<List<Employee>> findEmployeeEntities(int maxResults, int firstResult) {
+        return async(() -> employees.findEmployeeEntities(maxResults, firstResult));
+    }
+
+    public CompletableFuture<List<Employee>> findEmployeeEntitiesWithDepartment(int maxResults, int firstResult) {
+        return async(() -> employees.findEmployeeEntitiesWithDepartment(maxResults, firstResult));
+    }
+
+    public CompletableFuture<List<Department>> findDepartmentEntities(int maxResults, int firstResult) {
+        return async(() -> departments.findDepartmentEntities(maxResults, firstResult));
+    }
+
+    public CompletableFuture<Integer> getEmployeeCount() {
+        return async(employees::getEmployeeCount);
+    }
+
+    public CompletableFuture<Integer> getDepartmentCount() {
+        return async(departments::getDepartmentCount);
+    }
+}
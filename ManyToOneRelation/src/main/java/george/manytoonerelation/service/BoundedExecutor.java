@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.manytoonerelation.service;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executor for blocking controller calls with a fixed limit on concurrent
+ * calls and on calls waiting for a slot. Tasks run on virtual threads when
+ * the JDK has them (21+) and on a pool of {@code maxConcurrency} daemon
+ * threads otherwise.
+ *
+ * Once {@code maxConcurrency + maxQueued} tasks are in flight, submitting
+ * blocks the caller until one completes, so a burst of requests slows its
+ * producers down instead of piling up work. With a timeout the caller gives
+ * up after waiting that long and gets a RejectedExecutionException.
+ *
+ * A task that submits to its own executor runs the new task itself, at
+ * once: it holds a slot and a thread, and waiting for more of them while
+ * the executor is saturated with such tasks would never end.
+ *
+ * Keep {@code maxConcurrency} at or below the size of the EclipseLink
+ * connection pool (32 by default); more threads would only wait for
+ * connections.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class BoundedExecutor implements Executor, AutoCloseable {
+
+    private static final AtomicInteger POOLS = new AtomicInteger();
+
+    private final ExecutorService delegate;
+    private final boolean virtual;
+    private final int capacity;
+    private final Semaphore inFlight;
+    private final Semaphore running;
+    private final long timeoutNanos;
+    private final ThreadLocal<Boolean> inTask = new ThreadLocal<>();
+
+    public BoundedExecutor(int maxConcurrency) {
+        this(maxConcurrency, 4 * maxConcurrency, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    public BoundedExecutor(int maxConcurrency, int maxQueued, long timeout, TimeUnit unit) {
+        if (maxConcurrency < 1 || maxQueued < 0 || timeout < 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive, maxQueued and timeout not negative");
+        }
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        this.virtual = virtualThreads != null;
+        this.delegate = virtual ? virtualThreads : newThreadPool(maxConcurrency);
+        this.capacity = maxConcurrency + maxQueued;
+        this.inFlight = new Semaphore(capacity);
+        this.running = new Semaphore(maxConcurrency);
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Cannot create virtual thread executor", ex);
+        }
+    }
+
+    private static ExecutorService newThreadPool(int threads) {
+        final String prefix = "jpa-async-" + POOLS.incrementAndGet() + "-";
+        final AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = (task) -> {
+            Thread thread = new Thread(task, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, this);
+    }
+
+    /**
+     * Runs {@code task} once a slot is free; blocks while the executor is
+     * saturated. Called from a task of this executor, runs {@code task} in
+     * the calling thread instead.
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (inTask.get() != null) {
+            task.run();
+            return;
+        }
+        acquire();
+        try {
+            delegate.execute(() -> {
+                inTask.set(Boolean.TRUE);
+                try {
+                    if (virtual) {
+                        running.acquireUninterruptibly();
+                        try {
+                            task.run();
+                        } finally {
+                            running.release();
+                        }
+                    } else {
+                        task.run();
+                    }
+                } finally {
+                    inTask.remove();
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.release();
+            throw ex;
+        }
+    }
+
+    private void acquire() {
+        try {
+            if (timeoutNanos == Long.MAX_VALUE) {
+                inFlight.acquire();
+            } else if (!inFlight.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new RejectedExecutionException("Executor saturated");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a free slot", ex);
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Tasks submitted and not finished yet, running or waiting.
+     */
+    public int getInFlight() {
+        return capacity - inFlight.availablePermits();
+    }
+
+    /**
+     * Stops accepting tasks and waits for the submitted ones to finish.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        delegate.shutdown();
+        delegate.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+}
@@ -5,16 +5,35 @@
  */
 package george.manytoonerelation.service;
 
+import george.common.CacheMode;
+import george.common.EntityLookups;
+import george.common.KeysetPage;
+import george.common.Patch;
+import george.common.ResultCache;
+import george.common.ResultCache.Reads;
 import george.manytoonerelation.entity.Department;
+import george.manytoonerelation.entity.Department_;
 import george.manytoonerelation.service.exceptions.NonexistentEntityException;
+import george.manytoonerelation.service.exceptions.StaleEntityException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.RollbackException;
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
 
 /**
  *
@@ -25,10 +44,52 @@ public class DepartmentJpaController implements Serializable {
     public DepartmentJpaController(EntityManagerFactory emf) {
         this.emf = emf;
     }
+
+    public DepartmentJpaController(EntityManagerFactory emf, ResultCache resultCache) {
+        this.emf = emf;
+        this.resultCache = resultCache;
+    }
     private EntityManagerFactory emf = null;
+    private ResultCache resultCache = null;
 
+    /**
+     * A new EntityManager, or the one of the {@link UnitOfWork} active on this
+     * thread.
+     */
     public EntityManager getEntityManager() {
-        return emf.createEntityManager();
+        return UnitOfWork.entityManager(emf);
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    private <T> T cached(String key, Reads reads, Supplier<T> loader) {
+        // inside a unit of work the cache would hide the unit's own changes
+        if (resultCache == null || UnitOfWork.isActive(emf)) {
+            return loader.get();
+        }
+        return resultCache.get(key, Department.class, reads, loader);
+    }
+
+    private <T extends Department> List<T> cachedList(String key, Reads reads, Supplier<List<T>> loader) {
+        if (resultCache == null || UnitOfWork.isActive(emf)) {
+            return loader.get();
+        }
+        return resultCache.getEntities(key, emf, Department.class, reads, loader);
+    }
+
+    private void rowsChanged(Class<?> type) {
+        if (resultCache != null) {
+            // other threads still see the old rows until an enclosing unit of work ends
+            UnitOfWork.afterCompletion(emf, () -> resultCache.rowsChanged(type));
+        }
+    }
+
+    private void valuesChanged(Class<?> type) {
+        if (resultCache != null) {
+            UnitOfWork.afterCompletion(emf, () -> resultCache.valuesChanged(type));
+        }
     }
 
     public void create(Department department) {
@@ -42,32 +103,67 @@ public class DepartmentJpaController implements Serializable {
             if (em != null) {
                 em.close();
             }
+            rowsChanged(Department.class);
         }
     }
 
-    public void edit(Department department) throws NonexistentEntityException, Exception {
+    /**
+     * Merges {@code department} with a version-checked UPDATE. Throws
+     * StaleEntityException when the department was changed or removed since
+     * {@code department} was read.
+     */
+    public void edit(Department department) throws StaleEntityException, Exception {
         EntityManager em = null;
         try {
             em = getEntityManager();
             em.getTransaction().begin();
             department = em.merge(department);
             em.getTransaction().commit();
-        } catch (Exception ex) {
-            String msg = ex.getLocalizedMessage();
-            if (msg == null || msg.length() == 0) {
-                Long id = department.getId();
-                if (findDepartment(id) == null) {
-                    throw new NonexistentEntityException("The department with id " + id + " no longer exists.");
-                }
+        } catch (OptimisticLockException ex) {
+            throw stale(department.getId(), ex);
+        } catch (RollbackException ex) {
+            if (ex.getCause() instanceof OptimisticLockException) {
+                throw stale(department.getId(), ex.getCause());
             }
             throw ex;
         } finally {
             if (em != null) {
                 em.close();
             }
+            valuesChanged(Department.class);
         }
     }
 
+    /**
+     * Writes the attributes in {@code patch} to the department with id {@code id}
+     * with one UPDATE, without loading the department first. Returns false when
+     * there is no such department.
+     */
+    public boolean patchDepartment(Long id, Patch<Department> patch) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            Query q = patch.toQuery(em, Department.class, id);
+            q.setHint(QueryHints.BATCH_WRITING, HintValues.FALSE);
+            em.getTransaction().begin();
+            int rows = q.executeUpdate();
+            em.getTransaction().commit();
+            // in a unit of work the UPDATE is not committed yet: evicting now would let
+            // another thread cache the old row again
+            UnitOfWork.afterCompletion(emf, () -> emf.getCache().evict(Department.class, id));
+            return rows == 1;
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+            valuesChanged(Department.class);
+        }
+    }
+
+    private static StaleEntityException stale(Long id, Throwable cause) {
+        return new StaleEntityException("The department with id " + id + " was changed or removed since it was read.", cause);
+    }
+
     public void destroy(Long id) throws NonexistentEntityException {
         EntityManager em = null;
         try {
@@ -86,15 +182,50 @@ public class DepartmentJpaController implements Serializable {
             if (em != null) {
                 em.close();
             }
+            rowsChanged(Department.class);
         }
     }
 
     public List<Department> findDepartmentEntities() {
-        return findDepartmentEntities(true, -1, -1);
+        return cachedList("findDepartmentEntities", Reads.ROWS, () -> findDepartmentEntities(true, -1, -1));
     }
 
     public List<Department> findDepartmentEntities(int maxResults, int firstResult) {
-        return findDepartmentEntities(false, maxResults, firstResult);
+        return cachedList("findDepartmentEntities:" + maxResults + ":" + firstResult, Reads.ROWS,
+                () -> findDepartmentEntities(false, maxResults, firstResult));
+    }
+
+    /**
+     * Keyset pagination: returns up to {@code maxResults} departments with an id
+     * greater than {@code lastId}, in id order. Unlike
+     * {@link #findDepartmentEntities(int, int)} the cost does not grow with the page
+     * depth, because the primary key index is used to seek to the first row.
+     * Pass {@code null} for the first page.
+     */
+    public KeysetPage<Department> findDepartmentEntitiesAfter(Long lastId, int maxResults) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maxResults must be positive: " + maxResults);
+        }
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Department> cq = cb.createQuery(Department.class);
+            Root<Department> rt = cq.from(Department.class);
+            if (lastId != null) {
+                cq.where(cb.greaterThan(rt.get(Department_.id), lastId));
+            }
+            cq.select(rt).orderBy(cb.asc(rt.get(Department_.id)));
+            TypedQuery<Department> q = em.createQuery(cq);
+            q.setMaxResults(maxResults + 1);
+            List<Department> departments = q.getResultList();
+            if (departments.size() > maxResults) {
+                departments = new ArrayList<>(departments.subList(0, maxResults));
+                return new KeysetPage<>(departments, departments.get(maxResults - 1).getId());
+            }
+            return new KeysetPage<>(departments, null);
+        } finally {
+            em.close();
+        }
     }
 
     private List<Department> findDepartmentEntities(boolean all, int maxResults, int firstResult) {
@@ -113,16 +244,47 @@ public class DepartmentJpaController implements Serializable {
         }
     }
 
+    /**
+     * Multi-get: looks up every id in {@code ids} through one EntityManager
+     * and bounded IN-list queries. The result keeps the order of {@code ids};
+     * an empty Optional marks an id with no department.
+     */
+    public List<Optional<Department>> findDepartments(Collection<Long> ids) {
+        EntityManager em = getEntityManager();
+        try {
+            return EntityLookups.findAll(em, Department.class, Department_.id, Department::getId, ids);
+        } finally {
+            em.close();
+        }
+    }
+
     public Department findDepartment(Long id) {
+        return findDepartment(id, CacheMode.USE.hints());
+    }
+
+    /**
+     * Looks up one department and uses the shared cache as {@code mode} says:
+     * {@link CacheMode#BYPASS} reads the row without touching the cache and
+     * {@link CacheMode#REFRESH} also replaces the cached copy with it.
+     */
+    public Department findDepartment(Long id, CacheMode mode) {
+        return findDepartment(id, mode.hints());
+    }
+
+    private Department findDepartment(Long id, Map<String, Object> hints) {
         EntityManager em = getEntityManager();
         try {
-            return em.find(Department.class, id);
+            return em.find(Department.class, id, hints);
         } finally {
             em.close();
         }
     }
 
     public int getDepartmentCount() {
+        return cached("getDepartmentCount", Reads.ROWS, this::countDepartments);
+    }
+
+    private int countDepartments() {
         EntityManager em = getEntityManager();
         try {
             CriteriaQuery cq = em.getCriteriaBuilder().createQuery();
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.manytoonerelation.service;
+
+import george.manytoonerelation.entity.Department_;
+import george.manytoonerelation.entity.Employee;
+import george.manytoonerelation.entity.Employee_;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+
+/**
+ * Conditions on ename, salary, deg and department for set-based employee operations. All
+ * conditions that are set must hold; a filter without conditions matches
+ * every employee.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class EmployeeFilter {
+
+    private String ename;
+    private String enamePrefix;
+    private String deg;
+    private Long departmentId;
+    private Double minSalary;
+    private Double maxSalary;
+
+    public EmployeeFilter ename(String ename) {
+        this.ename = ename;
+        return this;
+    }
+
+    public EmployeeFilter enamePrefix(String enamePrefix) {
+        this.enamePrefix = enamePrefix;
+        return this;
+    }
+
+    public EmployeeFilter deg(String deg) {
+        this.deg = deg;
+        return this;
+    }
+
+    /**
+     * Employees of the department with this id; compared against the
+     * DEPARTMENT_ID foreign key without joining the department table.
+     */
+    public EmployeeFilter departmentId(Long departmentId) {
+        this.departmentId = departmentId;
+        return this;
+    }
+
+    /**
+     * Inclusive lower bound of the salary.
+     */
+    public EmployeeFilter minSalary(double minSalary) {
+        this.minSalary = minSalary;
+        return this;
+    }
+
+    /**
+     * Inclusive upper bound of the salary.
+     */
+    public EmployeeFilter maxSalary(double maxSalary) {
+        this.maxSalary = maxSalary;
+        return this;
+    }
+
+    public String getEname() {
+        return ename;
+    }
+
+    public String getEnamePrefix() {
+        return enamePrefix;
+    }
+
+    public String getDeg() {
+        return deg;
+    }
+
+    public Long getDepartmentId() {
+        return departmentId;
+    }
+
+    public Double getMinSalary() {
+        return minSalary;
+    }
+
+    public Double getMaxSalary() {
+        return maxSalary;
+    }
+
+    public Predicate toPredicate(CriteriaBuilder cb, Path<Employee> employee) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (ename != null) {
+            predicates.add(cb.equal(employee.get(Employee_.ename), ename));
+        }
+        if (enamePrefix != null) {
+            predicates.add(cb.like(employee.get(Employee_.ename), escapeLike(enamePrefix) + "%", '\\'));
+        }
+        if (deg != null) {
+            predicates.add(cb.equal(employee.get(Employee_.deg), deg));
+        }
+        if (departmentId != null) {
+            predicates.add(cb.equal(employee.get(Employee_.department).get(Department_.id), departmentId));
+        }
+        if (minSalary != null) {
+            predicates.add(cb.ge(employee.get(Employee_.salary), minSalary));
+        }
+        if (maxSalary != null) {
+            predicates.add(cb.le(employee.get(Employee_.salary), maxSalary));
+        }
+        return cb.and(predicates.toArray(new Predicate[predicates.size()]));
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    @Override
+    public String toString() {
+        return "EmployeeFilter[ ename=" + ename + ", enamePrefix=" + enamePrefix + ", deg=" + deg
+                + ", departmentId=" + departmentId + ", minSalary=" + minSalary
+                + ", maxSalary=" + maxSalary + " ]";
+    }
+}
@@ -5,18 +5,52 @@
  */
 package george.manytoonerelation.service;
 
+import george.common.CacheMode;
+import george.common.EntityCursors;
+import george.common.EntityLookups;
+import george.common.KeysetPage;
+import george.common.ParallelScan;
+import george.common.Patch;
+import george.common.ResultCache;
+import george.common.ResultCache.Reads;
 import george.manytoonerelation.entity.Department;
+import george.manytoonerelation.entity.Department_;
 import george.manytoonerelation.entity.Employee;
+import george.manytoonerelation.entity.Employee_;
 import george.manytoonerelation.service.exceptions.NonexistentEntityException;
+import george.manytoonerelation.service.exceptions.StaleEntityException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.persistence.Tuple;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.Persistence;
+import javax.persistence.RollbackException;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Root;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
 
 /**
  *
@@ -24,7 +58,7 @@ import javax.persistence.criteria.Root;
  */
 public class EmployeeJpaController implements Serializable {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws StaleEntityException {
         EntityManagerFactory emf = Persistence.createEntityManagerFactory("ManyToOneRelationJPA");
         EmployeeJpaController employeeCtrl = new EmployeeJpaController(emf);
         DepartmentJpaController departmentCtrl = new DepartmentJpaController(emf);
@@ -33,9 +67,6 @@ public class EmployeeJpaController implements Serializable {
         Department department = new Department();
         department.setName("Development");
 
-        //Store Department
-        departmentCtrl.create(department);
-
         //Create Employee1 Entity
         Employee employee1 = new Employee();
         employee1.setEname("Satish");
@@ -57,23 +88,100 @@ public class EmployeeJpaController implements Serializable {
         employee3.setDeg("Technical Writer");
         employee3.setDepartment(department);
 
-        //Store Employees
-        employeeCtrl.create(employee1, employee2, employee3);
+        //Store Department and Employees with one EntityManager and one commit
+        int count = UnitOfWork.call(emf, (em) -> {
+            departmentCtrl.create(department);
+            employeeCtrl.create(employee1, employee2, employee3);
+            return employeeCtrl.getEmployeeCount();
+        });
+        System.out.println("Employee count " + count);
         emf.close();
     }
 
     public EmployeeJpaController(EntityManagerFactory emf) {
         this.emf = emf;
     }
+
+    public EmployeeJpaController(EntityManagerFactory emf, ResultCache resultCache) {
+        this.emf = emf;
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * A controller whose {@link #create(Employee...)} calls share commits
+     * through {@code groupCommit}, which must write to the same {@code emf}.
+     */
+    public EmployeeJpaController(EntityManagerFactory emf, ResultCache resultCache, GroupCommit groupCommit) {
+        this.emf = emf;
+        this.resultCache = resultCache;
+        this.groupCommit = groupCommit;
+    }
     private EntityManagerFactory emf = null;
+    private ResultCache resultCache = null;
+    private GroupCommit groupCommit = null;
 
+    /**
+     * A new EntityManager, or the one of the {@link UnitOfWork} active on this
+     * thread.
+     */
     public EntityManager getEntityManager() {
-        return emf.createEntityManager();
+        return UnitOfWork.entityManager(emf);
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public GroupCommit getGroupCommit() {
+        return groupCommit;
     }
 
+    private <T> T cached(String key, Reads reads, Supplier<T> loader) {
+        // inside a unit of work the cache would hide the unit's own changes
+        if (resultCache == null || UnitOfWork.isActive(emf)) {
+            return loader.get();
+        }
+        return resultCache.get(key, Employee.class, reads, loader);
+    }
+
+    private <T extends Employee> List<T> cachedList(String key, Reads reads, Supplier<List<T>> loader) {
+        if (resultCache == null || UnitOfWork.isActive(emf)) {
+            return loader.get();
+        }
+        return resultCache.getEntities(key, emf, Employee.class, reads, loader);
+    }
+
+    private void rowsChanged(Class<?> type) {
+        if (resultCache != null) {
+            // other threads still see the old rows until an enclosing unit of work ends
+            UnitOfWork.afterCompletion(emf, () -> resultCache.rowsChanged(type));
+        }
+    }
+
+    private void valuesChanged(Class<?> type) {
+        if (resultCache != null) {
+            UnitOfWork.afterCompletion(emf, () -> resultCache.valuesChanged(type));
+        }
+    }
+
+    /**
+     * Persists {@code employees} in one transaction. With a
+     * {@link GroupCommit}, and outside a {@link UnitOfWork}, the transaction
+     * is shared with the create calls of other threads; the call still
+     * returns only once its employees are committed and throws only for
+     * their own failure.
+     */
     public void create(Employee... employees) {
         EntityManager em = null;
         if (employees != null && employees.length != 0) {
+            if (groupCommit != null && !UnitOfWork.isActive(emf)) {
+                try {
+                    groupCommit.persist(Arrays.asList(employees));
+                } finally {
+                    rowsChanged(Employee.class);
+                }
+                return;
+            }
             try {
                 em = getEntityManager();
                 em.getTransaction().begin();
@@ -85,33 +193,68 @@ public class EmployeeJpaController implements Serializable {
                 if (em != null) {
                     em.close();
                 }
+                rowsChanged(Employee.class);
             }
         }
     }
 
-    public void edit(Employee employee) throws NonexistentEntityException, Exception {
+    /**
+     * Merges {@code employee} with a version-checked UPDATE. Throws
+     * StaleEntityException when the employee was changed or removed since
+     * {@code employee} was read.
+     */
+    public void edit(Employee employee) throws StaleEntityException, Exception {
         EntityManager em = null;
         try {
             em = getEntityManager();
             em.getTransaction().begin();
             employee = em.merge(employee);
             em.getTransaction().commit();
-        } catch (Exception ex) {
-            String msg = ex.getLocalizedMessage();
-            if (msg == null || msg.length() == 0) {
-                Long id = employee.getId();
-                if (findEmployee(id) == null) {
-                    throw new NonexistentEntityException("The employee with id " + id + " no longer exists.");
-                }
+        } catch (OptimisticLockException ex) {
+            throw stale(employee.getId(), ex);
+        } catch (RollbackException ex) {
+            if (ex.getCause() instanceof OptimisticLockException) {
+                throw stale(employee.getId(), ex.getCause());
             }
             throw ex;
         } finally {
             if (em != null) {
                 em.close();
             }
+            valuesChanged(Employee.class);
         }
     }
 
+    /**
+     * Writes the attributes in {@code patch} to the employee with id {@code id}
+     * with one UPDATE, without loading the employee first. Returns false when
+     * there is no such employee.
+     */
+    public boolean patchEmployee(Long id, Patch<Employee> patch) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            Query q = patch.toQuery(em, Employee.class, id);
+            q.setHint(QueryHints.BATCH_WRITING, HintValues.FALSE);
+            em.getTransaction().begin();
+            int rows = q.executeUpdate();
+            em.getTransaction().commit();
+            // in a unit of work the UPDATE is not committed yet: evicting now would let
+            // another thread cache the old row again
+            UnitOfWork.afterCompletion(emf, () -> emf.getCache().evict(Employee.class, id));
+            return rows == 1;
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+            valuesChanged(Employee.class);
+        }
+    }
+
+    private static StaleEntityException stale(Long id, Throwable cause) {
+        return new StaleEntityException("The employee with id " + id + " was changed or removed since it was read.", cause);
+    }
+
     public void destroy(Long id) throws NonexistentEntityException {
         EntityManager em = null;
         try {
@@ -126,6 +269,58 @@ public class EmployeeJpaController implements Serializable {
             }
             em.remove(employee);
             em.getTransaction().commit();
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+            rowsChanged(Employee.class);
+        }
+    }
+
+    /**
+     * Multiplies the salary of every employee matching {@code filter} by
+     * {@code factor} with a single UPDATE statement, without loading any
+     * entity. Returns the number of updated rows.
+     */
+    public int updateSalaries(EmployeeFilter filter, double factor) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaUpdate<Employee> cu = cb.createCriteriaUpdate(Employee.class);
+            Root<Employee> rt = cu.from(Employee.class);
+            cu.set(rt.get(Employee_.salary), cb.prod(rt.get(Employee_.salary), factor));
+            // bulk updates skip optimistic locking, so bump the version by hand
+            cu.set(rt.get(Employee_.version), cb.sum(rt.get(Employee_.version), 1L));
+            cu.where(filter.toPredicate(cb, rt));
+            int rows = executeBulk(em, em.createQuery(cu));
+            valuesChanged(Employee.class);
+            return rows;
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Sets the deg of every employee matching {@code filter} with a single
+     * UPDATE statement. Returns the number of updated rows.
+     */
+    public int updateDeg(EmployeeFilter filter, String deg) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaUpdate<Employee> cu = cb.createCriteriaUpdate(Employee.class);
+            Root<Employee> rt = cu.from(Employee.class);
+            cu.set(rt.get(Employee_.deg), deg);
+            // bulk updates skip optimistic locking, so bump the version by hand
+            cu.set(rt.get(Employee_.version), cb.sum(rt.get(Employee_.version), 1L));
+            cu.where(filter.toPredicate(cb, rt));
+            int rows = executeBulk(em, em.createQuery(cu));
+            valuesChanged(Employee.class);
+            return rows;
         } finally {
             if (em != null) {
                 em.close();
@@ -133,12 +328,188 @@ public class EmployeeJpaController implements Serializable {
         }
     }
 
+    /**
+     * Deletes every employee matching {@code filter} with a single DELETE
+     * statement. Returns the number of deleted rows.
+     */
+    public int destroyAll(EmployeeFilter filter) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaDelete<Employee> cd = cb.createCriteriaDelete(Employee.class);
+            Root<Employee> rt = cd.from(Employee.class);
+            cd.where(filter.toPredicate(cb, rt));
+            int rows = executeBulk(em, em.createQuery(cd));
+            rowsChanged(Employee.class);
+            return rows;
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Bulk statements bypass the persistence context, so the shared cache is
+     * evicted for Employee once they are committed, which inside a
+     * {@link UnitOfWork} is when the unit ends; the caller invalidates the
+     * result cache. Batch writing is turned off for the statement because a
+     * batched statement does not report its row count.
+     */
+    private int executeBulk(EntityManager em, Query q) {
+        q.setHint(QueryHints.BATCH_WRITING, HintValues.FALSE);
+        em.getTransaction().begin();
+        int rows = q.executeUpdate();
+        em.getTransaction().commit();
+        UnitOfWork.afterCompletion(emf, () -> emf.getCache().evict(Employee.class));
+        return rows;
+    }
+
     public List<Employee> findEmployeeEntities() {
-        return findEmployeeEntities(true, -1, -1);
+        return cachedList("findEmployeeEntities", Reads.ROWS, () -> findEmployeeEntities(true, -1, -1));
     }
 
     public List<Employee> findEmployeeEntities(int maxResults, int firstResult) {
-        return findEmployeeEntities(false, maxResults, firstResult);
+        return cachedList("findEmployeeEntities:" + maxResults + ":" + firstResult, Reads.ROWS,
+                () -> findEmployeeEntities(false, maxResults, firstResult));
+    }
+
+    /**
+     * Employees matching {@code filter}. Conditions on deg, a prefix of ename
+     * and the department are answered from the indexes declared on
+     * {@link Employee} instead of a table scan.
+     */
+    public List<Employee> findEmployeeEntities(EmployeeFilter filter) {
+        return findEmployeeEntitiesMatching(filter);
+    }
+
+    public List<Employee> findEmployeeEntities(EmployeeFilter filter, int maxResults, int firstResult) {
+        return cachedList("findEmployeeEntities:" + filter + ":" + maxResults + ":" + firstResult, Reads.VALUES,
+                () -> findEmployeeEntities(filter, false, maxResults, firstResult));
+    }
+
+    public List<Employee> findEmployeeEntitiesByDeg(String deg) {
+        return findEmployeeEntitiesMatching(new EmployeeFilter().deg(deg));
+    }
+
+    public List<Employee> findEmployeeEntitiesByEnamePrefix(String enamePrefix) {
+        return findEmployeeEntitiesMatching(new EmployeeFilter().enamePrefix(enamePrefix));
+    }
+
+    public List<Employee> findEmployeeEntitiesByDepartment(Long departmentId) {
+        return findEmployeeEntitiesMatching(new EmployeeFilter().departmentId(departmentId));
+    }
+
+    private List<Employee> findEmployeeEntitiesMatching(EmployeeFilter filter) {
+        return cachedList("findEmployeeEntities:" + filter, Reads.VALUES,
+                () -> findEmployeeEntities(filter, true, -1, -1));
+    }
+
+    private List<Employee> findEmployeeEntities(EmployeeFilter filter, boolean all, int maxResults,
+            int firstResult) {
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Employee> cq = cb.createQuery(Employee.class);
+            Root<Employee> rt = cq.from(Employee.class);
+            cq.select(rt).where(filter.toPredicate(cb, rt));
+            TypedQuery<Employee> q = em.createQuery(cq);
+            q.setHint(QueryHints.BATCH, "e.department");
+            q.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
+            if (!all) {
+                q.setMaxResults(maxResults);
+                q.setFirstResult(firstResult);
+            }
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Keyset pagination: returns up to {@code maxResults} employees with an id
+     * greater than {@code lastId}, in id order. Unlike
+     * {@link #findEmployeeEntities(int, int)} the cost does not grow with the page
+     * depth, because the primary key index is used to seek to the first row.
+     * Pass {@code null} for the first page.
+     */
+    public KeysetPage<Employee> findEmployeeEntitiesAfter(Long lastId, int maxResults) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maxResults must be positive: " + maxResults);
+        }
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Employee> cq = cb.createQuery(Employee.class);
+            Root<Employee> rt = cq.from(Employee.class);
+            if (lastId != null) {
+                cq.where(cb.greaterThan(rt.get(Employee_.id), lastId));
+            }
+            cq.select(rt).orderBy(cb.asc(rt.get(Employee_.id)));
+            TypedQuery<Employee> q = em.createQuery(cq);
+            q.setMaxResults(maxResults + 1);
+            List<Employee> employees = q.getResultList();
+            if (employees.size() > maxResults) {
+                employees = new ArrayList<>(employees.subList(0, maxResults));
+                return new KeysetPage<>(employees, employees.get(maxResults - 1).getId());
+            }
+            return new KeysetPage<>(employees, null);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Like {@link #findEmployeeEntities()}, but every employee's department is
+     * read in the same SELECT through a join fetch, so the whole list costs a
+     * single statement.
+     */
+    public List<Employee> findEmployeeEntitiesWithDepartment() {
+        return findEmployeeEntitiesWithDepartment(true, -1, -1);
+    }
+
+    public List<Employee> findEmployeeEntitiesWithDepartment(int maxResults, int firstResult) {
+        return findEmployeeEntitiesWithDepartment(false, maxResults, firstResult);
+    }
+
+    private List<Employee> findEmployeeEntitiesWithDepartment(boolean all, int maxResults, int firstResult) {
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaQuery<Employee> cq = em.getCriteriaBuilder().createQuery(Employee.class);
+            Root<Employee> rt = cq.from(Employee.class);
+            rt.fetch(Employee_.department, JoinType.LEFT);
+            cq.select(rt);
+            TypedQuery<Employee> q = em.createQuery(cq);
+            if (!all) {
+                q.setMaxResults(maxResults);
+                q.setFirstResult(firstResult);
+            }
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public Stream<Employee> streamEmployeeEntities() {
+        return streamEmployeeEntities(EntityCursors.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Streams every employee through a database cursor reading
+     * {@code fetchSize} rows at a time, in constant memory. The stream holds
+     * an EntityManager and a connection until it is closed, so use it in a
+     * try-with-resources block. It detaches what it has read as it goes, so
+     * it cannot be opened inside a {@link UnitOfWork}.
+     */
+    public Stream<Employee> streamEmployeeEntities(int fetchSize) {
+        if (UnitOfWork.isActive(emf)) {
+            throw new IllegalStateException("Cannot stream employees inside a unit of work");
+        }
+        EntityManager em = getEntityManager();
+        CriteriaQuery<Employee> cq = em.getCriteriaBuilder().createQuery(Employee.class);
+        cq.select(cq.from(Employee.class));
+        return EntityCursors.stream(em, em.createQuery(cq), fetchSize);
     }
 
     private List<Employee> findEmployeeEntities(boolean all, int maxResults, int firstResult) {
@@ -147,6 +518,9 @@ public class EmployeeJpaController implements Serializable {
             CriteriaQuery cq = em.getCriteriaBuilder().createQuery();
             cq.select(cq.from(Employee.class));
             Query q = em.createQuery(cq);
+            // departments of the whole result in one IN query instead of one SELECT each
+            q.setHint(QueryHints.BATCH, "e.department");
+            q.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
             if (!all) {
                 q.setMaxResults(maxResults);
                 q.setFirstResult(firstResult);
@@ -157,16 +531,135 @@ public class EmployeeJpaController implements Serializable {
         }
     }
 
+    /**
+     * Salary count, sum, min, max and average per deg, in deg order. The
+     * grouping runs in the database, so one row per deg is read instead of
+     * every employee.
+     */
+    public List<SalaryStats<String>> getSalaryStatsByDeg() {
+        return salaryStatsByDeg(new EmployeeFilter());
+    }
+
+    public List<SalaryStats<String>> getSalaryStatsByDeg(EmployeeFilter filter) {
+        return salaryStatsByDeg(filter);
+    }
+
+    private List<SalaryStats<String>> salaryStatsByDeg(EmployeeFilter filter) {
+        return cached("getSalaryStatsByDeg:" + filter, Reads.VALUES,
+                () -> Collections.unmodifiableList(salaryStats((rt) -> rt.get(Employee_.deg), filter)));
+    }
+
+    /**
+     * Like {@link #getSalaryStatsByDeg()}, grouped by department id. The
+     * department table is outer joined on its primary key, so employees
+     * without a department still form a group, with a {@code null} key.
+     */
+    public List<SalaryStats<Long>> getSalaryStatsByDepartment() {
+        return salaryStatsByDepartment(new EmployeeFilter());
+    }
+
+    public List<SalaryStats<Long>> getSalaryStatsByDepartment(EmployeeFilter filter) {
+        return salaryStatsByDepartment(filter);
+    }
+
+    private List<SalaryStats<Long>> salaryStatsByDepartment(EmployeeFilter filter) {
+        return cached("getSalaryStatsByDepartment:" + filter, Reads.VALUES,
+                () -> Collections.unmodifiableList(salaryStats(
+                        (rt) -> rt.join(Employee_.department, JoinType.LEFT).get(Department_.id), filter)));
+    }
+
+    private <K> List<SalaryStats<K>> salaryStats(Function<Root<Employee>, Expression<K>> groupBy,
+            EmployeeFilter filter) {
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Tuple> cq = cb.createTupleQuery();
+            Root<Employee> rt = cq.from(Employee.class);
+            Expression<K> key = groupBy.apply(rt);
+            Path<Double> salary = rt.get(Employee_.salary);
+            Expression<Long> count = cb.count(rt);
+            Expression<Double> sum = cb.sum(salary);
+            Expression<Double> min = cb.min(salary);
+            Expression<Double> max = cb.max(salary);
+            cq.multiselect(key, count, sum, min, max)
+                    .where(filter.toPredicate(cb, rt))
+                    .groupBy(key)
+                    .orderBy(cb.asc(key));
+            List<SalaryStats<K>> stats = new ArrayList<>();
+            for (Tuple row : em.createQuery(cq).getResultList()) {
+                stats.add(new SalaryStats<>(row.get(key), row.get(count), row.get(sum), row.get(min),
+                        row.get(max)));
+            }
+            return stats;
+        } finally {
+            em.close();
+        }
+    }
+
+    public <R> R scanEmployeeEntities(Collector<? super Employee, ?, R> collector) {
+        List<Class<? extends Employee>> types = Collections.singletonList(Employee.class);
+        return scan(types, collector, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parallel full scan: splits the id space into ranges and reads each
+     * range through its own EntityManager and cursor on one of
+     * {@code parallelism} fork-join workers, feeding every employee to
+     * {@code collector}, e.g. {@code Collectors.counting()} or
+     * {@code Collectors.groupingBy(...)}. Each worker holds a connection, so
+     * keep {@code parallelism} within the connection pool.
+     */
+    public <R> R scanEmployeeEntities(Collector<? super Employee, ?, R> collector, int parallelism) {
+        List<Class<? extends Employee>> types = Collections.singletonList(Employee.class);
+        return scan(types, collector, parallelism);
+    }
+
+    private <T, R> R scan(List<Class<? extends T>> types, Collector<? super T, ?, R> collector, int parallelism) {
+        return ParallelScan.scan(emf, types, Employee_.id.getName(), collector, parallelism,
+                EntityCursors.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Multi-get: looks up every id in {@code ids} through one EntityManager
+     * and bounded IN-list queries. The result keeps the order of {@code ids};
+     * an empty Optional marks an id with no employee.
+     */
+    public List<Optional<Employee>> findEmployees(Collection<Long> ids) {
+        EntityManager em = getEntityManager();
+        try {
+            return EntityLookups.findAll(em, Employee.class, Employee_.id, Employee::getId, ids);
+        } finally {
+            em.close();
+        }
+    }
+
     public Employee findEmployee(Long id) {
+        return findEmployee(id, CacheMode.USE.hints());
+    }
+
+    /**
+     * Looks up one employee and uses the shared cache as {@code mode} says:
+     * {@link CacheMode#BYPASS} reads the row without touching the cache and
+     * {@link CacheMode#REFRESH} also replaces the cached copy with it.
+     */
+    public Employee findEmployee(Long id, CacheMode mode) {
+        return findEmployee(id, mode.hints());
+    }
+
+    private Employee findEmployee(Long id, Map<String, Object> hints) {
         EntityManager em = getEntityManager();
         try {
-            return em.find(Employee.class, id);
+            return em.find(Employee.class, id, hints);
         } finally {
             em.close();
         }
     }
 
     public int getEmployeeCount() {
+        return cached("getEmployeeCount", Reads.ROWS, this::countEmployees);
+    }
+
+    private int countEmployees() {
         EntityManager em = getEntityManager();
         try {
             CriteriaQuery cq = em.getCriteriaBuilder().createQuery();
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.manytoonerelation.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Group commit: inserts submitted by many threads are collected for at most
+ * {@code maxDelay}, or until {@code maxBatchSize} entities are waiting, and
+ * persisted by one committer thread in one transaction, so the callers share
+ * one commit and one log force instead of paying for one each. With JDBC
+ * batch writing the inserts also go out as one batch.
+ *
+ * Every caller waits for the commit of its own entities and gets its own
+ * result: when the shared transaction fails, the group is split in halves
+ * and retried until the failing requests are isolated, so only the callers
+ * whose entities cannot be inserted see the failure. A retry persists the
+ * same instances again: they keep the ids the table generator gave them in
+ * the failed attempt, which was rolled back and so inserted nothing, and
+ * their version is set anew by the insert that succeeds. Entities whose
+ * request failed keep their ids and versions too; persist copies to retry
+ * them.
+ *
+ * The committer is a daemon thread; {@link #close()} commits what is
+ * waiting and stops it. It is never interrupted, because embedded Derby
+ * closes the connection of an interrupted thread. Whatever a group throws
+ * fails the futures of that group only; should the committer stop anyway,
+ * the requests still queued fail and new ones are rejected.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class GroupCommit implements AutoCloseable {
+
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    private static final AtomicInteger COMMITTERS = new AtomicInteger();
+    private static final Request SHUTDOWN = new Request(Collections.emptyList());
+
+    private static final class Request {
+
+        private final List<?> entities;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Request(List<?> entities) {
+            this.entities = entities;
+        }
+    }
+
+    private final EntityManagerFactory emf;
+    private final long maxDelayNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private boolean closed;
+
+    public GroupCommit(EntityManagerFactory emf) {
+        this(emf, DEFAULT_MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public GroupCommit(EntityManagerFactory emf, long maxDelay, TimeUnit unit, int maxBatchSize) {
+        if (maxDelay < 0 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxDelay must not be negative and maxBatchSize must be positive");
+        }
+        this.emf = emf;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.maxBatchSize = maxBatchSize;
+        this.committer = new Thread(this::commitLoop, "jpa-group-commit-" + COMMITTERS.incrementAndGet());
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Persists {@code entities} with the next group and blocks until they are
+     * committed. Throws the exception of their own insert, e.g. a
+     * PersistenceException for a duplicate key.
+     */
+    public void persist(Collection<?> entities) {
+        try {
+            submit(entities).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Queues {@code entities} for the next group; the future completes once
+     * they are committed, or exceptionally with the failure of their insert.
+     */
+    public CompletableFuture<Void> submit(Collection<?> entities) {
+        Request request = new Request(new ArrayList<>(entities));
+        synchronized (queue) {
+            if (closed) {
+                throw new RejectedExecutionException("Group commit is closed");
+            }
+            if (!committer.isAlive()) {
+                throw new RejectedExecutionException("Group commit thread has stopped");
+            }
+            queue.add(request);
+        }
+        return request.done;
+    }
+
+    private void commitLoop() {
+        List<Request> group = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                Request next = queue.take();
+                long deadline = System.nanoTime() + maxDelayNanos;
+                int size = 0;
+                while (next != null) {
+                    if (next == SHUTDOWN) {
+                        running = false;
+                        break;
+                    }
+                    group.add(next);
+                    size += next.entities.size();
+                    if (size >= maxBatchSize) {
+                        break;
+                    }
+                    long wait = deadline - System.nanoTime();
+                    next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                }
+                if (!group.isEmpty()) {
+                    commit(group);
+                }
+            } catch (InterruptedException ex) {
+                running = false;
+            } catch (Throwable ex) {
+                fail(group, ex);
+            } finally {
+                fail(group, new IllegalStateException("Group commit stopped"));
+                group.clear();
+            }
+        }
+        synchronized (queue) {
+            closed = true;
+        }
+        fail(queue, new IllegalStateException("Group commit stopped"));
+    }
+
+    /**
+     * Completes the requests of {@code group} that are not done yet with
+     * {@code failure}.
+     */
+    private static void fail(Collection<Request> group, Throwable failure) {
+        for (Request request : group) {
+            request.done.completeExceptionally(failure);
+        }
+    }
+
+    private void commit(List<Request> group) {
+        try {
+            persist(group);
+        } catch (RuntimeException ex) {
+            if (group.size() == 1) {
+                group.get(0).done.completeExceptionally(ex);
+                return;
+            }
+            // bisect to the requests that broke the group; the others commit in halves
+            int half = group.size() / 2;
+            commit(group.subList(0, half));
+            commit(group.subList(half, group.size()));
+        }
+    }
+
+    private void persist(List<Request> group) {
+        EntityManager em = null;
+        try {
+            em = emf.createEntityManager();
+            em.getTransaction().begin();
+            for (Request request : group) {
+                for (Object entity : request.entities) {
+                    em.persist(entity);
+                }
+            }
+            em.getTransaction().commit();
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+        commits.increment();
+        requests.add(group.size());
+        for (Request request : group) {
+            request.done.complete(null);
+        }
+    }
+
+    /**
+     * Transactions committed so far.
+     */
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    /**
+     * Requests committed so far; divided by {@link #getCommits()} it gives the
+     * average group size.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Commits the requests already queued, rejects new ones and stops the
+     * committer thread.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(SHUTDOWN);
+        }
+        committer.join();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.manytoonerelation.service;
+
+import george.common.CacheMode;
+import george.common.ControllerMetrics;
+import george.common.KeysetPage;
+import george.common.Patch;
+import george.common.ResultCache;
+import george.manytoonerelation.entity.Department;
+import george.manytoonerelation.service.exceptions.NonexistentEntityException;
+import george.manytoonerelation.service.exceptions.StaleEntityException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * DepartmentJpaController that records the count, errors and latency of every call
+ * in {@link ControllerMetrics}, published over JMX.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class InstrumentedDepartmentJpaController extends DepartmentJpaController implements AutoCloseable {
+
+    private final ControllerMetrics metrics;
+
+    public InstrumentedDepartmentJpaController(EntityManagerFactory emf) {
+        this(emf, null, new ControllerMetrics("george.manytoonerelation", "DepartmentJpaController"));
+    }
+
+    public InstrumentedDepartmentJpaController(EntityManagerFactory emf, ResultCache resultCache, ControllerMetrics metrics) {
+        super(emf, resultCache);
+        this.metrics = metrics;
+    }
+
+    public ControllerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Unregisters the MBeans of this controller.
+     */
+    @Override
+    public void close() {
+        metrics.close();
+    }
+
+    @Override
+    public void create(final Department department) {
+        metrics.time("create", () -> {
+            super.create(department);
+            return null;
+        });
+    }
+
+    @Override
+    public void edit(final Department department) throws StaleEntityException, Exception {
+        metrics.time("edit", () -> {
+            super.edit(department);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean patchDepartment(final Long id, final Patch<Department> patch) {
+        return metrics.time("patchDepartment", () -> super.patchDepartment(id, patch));
+    }
+
+    @Override
+    public void destroy(final Long id) throws NonexistentEntityException {
+        metrics.time("destroy", () -> {
+            super.destroy(id);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Department> findDepartmentEntities() {
+        return metrics.time("findDepartmentEntities()", () -> super.findDepartmentEntities());
+    }
+
+    @Override
+    public List<Department> findDepartmentEntities(final int maxResults, final int firstResult) {
+        return metrics.time("findDepartmentEntities(int,int)", () -> super.findDepartmentEntities(maxResults, firstResult));
+    }
+
+    @Override
+    public KeysetPage<Department> findDepartmentEntitiesAfter(final Long lastId, final int maxResults) {
+        return metrics.time("findDepartmentEntitiesAfter", () -> super.findDepartmentEntitiesAfter(lastId, maxResults));
+    }
+
+    @Override
+    public List<Optional<Department>> findDepartments(final Collection<Long> ids) {
+        return metrics.time("findDepartments", () -> super.findDepartments(ids));
+    }
+
+    @Override
+    public Department findDepartment(final Long id) {
+        return metrics.time("findDepartment(Long)", () -> super.findDepartment(id));
+    }
+
+    @Override
+    public Department findDepartment(final Long id, final CacheMode mode) {
+        return metrics.time("findDepartment(Long,CacheMode)", () -> super.findDepartment(id, mode));
+    }
+
+    @Override
+    public int getDepartmentCount() {
+        return metrics.time("getDepartmentCount", () -> super.getDepartmentCount());
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.manytoonerelation.service;
+
+import george.common.CacheMode;
+import george.common.ControllerMetrics;
+import george.common.KeysetPage;
+import george.common.Patch;
+import george.common.ResultCache;
+import george.manytoonerelation.entity.Employee;
+import george.manytoonerelation.service.exceptions.NonexistentEntityException;
+import george.manytoonerelation.service.exceptions.StaleEntityException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collector;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * EmployeeJpaController that records the count, errors and latency of every call
+ * in {@link ControllerMetrics}, published over JMX.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class InstrumentedEmployeeJpaController extends EmployeeJpaController implements AutoCloseable {
+
+    private final ControllerMetrics metrics;
+
+    public InstrumentedEmployeeJpaController(EntityManagerFactory emf) {
+        this(emf, null, new ControllerMetrics("george.manytoonerelation", "EmployeeJpaController"));
+    }
+
+    public InstrumentedEmployeeJpaController(EntityManagerFactory emf, ResultCache resultCache, ControllerMetrics metrics) {
+        super(emf, resultCache);
+        this.metrics = metrics;
+    }
+
+    public InstrumentedEmployeeJpaController(EntityManagerFactory emf, ResultCache resultCache, GroupCommit groupCommit,
+            ControllerMetrics metrics) {
+        super(emf, resultCache, groupCommit);
+        this.metrics = metrics;
+    }
+
+    public ControllerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Unregisters the MBeans of this controller.
+     */
+    @Override
+    public void close() {
+        metrics.close();
+    }
+
+    @Override
+    public void create(final Employee... employees) {
+        metrics.time("create", () -> {
+            super.create(employees);
+            return null;
+        });
+    }
+
+    @Override
+    public void edit(final Employee employee) throws StaleEntityException, Exception {
+        metrics.time("edit", () -> {
+            super.edit(employee);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean patchEmployee(final Long id, final Patch<Employee> patch) {
+        return metrics.time("patchEmployee", () -> super.patchEmployee(id, patch));
+    }
+
+    @Override
+    public void destroy(final Long id) throws NonexistentEntityException {
+        metrics.time("destroy", () -> {
+            super.destroy(id);
+            return null;
+        });
+    }
+
+    @Override
+    public int updateSalaries(final EmployeeFilter filter, final double factor) {
+        return metrics.time("updateSalaries", () -> super.updateSalaries(filter, factor));
+    }
+
+    @Override
+    public int updateDeg(final EmployeeFilter filter, final String deg) {
+        return metrics.time("updateDeg", () -> super.updateDeg(filter, deg));
+    }
+
+    @Override
+    public int destroyAll(final EmployeeFilter filter) {
+        return metrics.time("destroyAll", () -> super.destroyAll(filter));
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntities() {
+        return metrics.time("findEmployeeEntities()", () -> super.findEmployeeEntities());
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntities(final int maxResults, final int firstResult) {
+        return metrics.time("findEmployeeEntities(int,int)", () -> super.findEmployeeEntities(maxResults, firstResult));
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntities(final EmployeeFilter filter) {
+        return metrics.time("findEmployeeEntities(EmployeeFilter)", () -> super.findEmployeeEntities(filter));
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntities(final EmployeeFilter filter, final int maxResults, final int firstResult) {
+        return metrics.time("findEmployeeEntities(EmployeeFilter,int,int)", () -> super.findEmployeeEntities(filter, maxResults, firstResult));
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntitiesByDeg(final String deg) {
+        return metrics.time("findEmployeeEntitiesByDeg", () -> super.findEmployeeEntitiesByDeg(deg));
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntitiesByEnamePrefix(final String enamePrefix) {
+        return metrics.time("findEmployeeEntitiesByEnamePrefix", () -> super.findEmployeeEntitiesByEnamePrefix(enamePrefix));
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntitiesByDepartment(final Long departmentId) {
+        return metrics.time("findEmployeeEntitiesByDepartment", () -> super.findEmployeeEntitiesByDepartment(departmentId));
+    }
+
+    @Override
+    public KeysetPage<Employee> findEmployeeEntitiesAfter(final Long lastId, final int maxResults) {
+        return metrics.time("findEmployeeEntitiesAfter", () -> super.findEmployeeEntitiesAfter(lastId, maxResults));
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntitiesWithDepartment() {
+        return metrics.time("findEmployeeEntitiesWithDepartment()", () -> super.findEmployeeEntitiesWithDepartment());
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntitiesWithDepartment(final int maxResults, final int firstResult) {
+        return metrics.time("findEmployeeEntitiesWithDepartment(int,int)", () -> super.findEmployeeEntitiesWithDepartment(maxResults, firstResult));
+    }
+
+    @Override
+    public List<SalaryStats<String>> getSalaryStatsByDeg() {
+        return metrics.time("getSalaryStatsByDeg()", () -> super.getSalaryStatsByDeg());
+    }
+
+    @Override
+    public List<SalaryStats<String>> getSalaryStatsByDeg(final EmployeeFilter filter) {
+        return metrics.time("getSalaryStatsByDeg(EmployeeFilter)", () -> super.getSalaryStatsByDeg(filter));
+    }
+
+    @Override
+    public List<SalaryStats<Long>> getSalaryStatsByDepartment() {
+        return metrics.time("getSalaryStatsByDepartment()", () -> super.getSalaryStatsByDepartment());
+    }
+
+    @Override
+    public List<SalaryStats<Long>> getSalaryStatsByDepartment(final EmployeeFilter filter) {
+        return metrics.time("getSalaryStatsByDepartment(EmployeeFilter)", () -> super.getSalaryStatsByDepartment(filter));
+    }
+
+    @Override
+    public <R> R scanEmployeeEntities(final Collector<? super Employee, ?, R> collector) {
+        return metrics.time("scanEmployeeEntities(Collector)", () -> super.scanEmployeeEntities(collector));
+    }
+
+    @Override
+    public <R> R scanEmployeeEntities(final Collector<? super Employee, ?, R> collector, final int parallelism) {
+        return metrics.time("scanEmployeeEntities(Collector,int)", () -> super.scanEmployeeEntities(collector, parallelism));
+    }
+
+    @Override
+    public List<Optional<Employee>> findEmployees(final Collection<Long> ids) {
+        return metrics.time("findEmployees", () -> super.findEmployees(ids));
+    }
+
+    @Override
+    public Employee findEmployee(final Long id) {
+        return metrics.time("findEmployee(Long)", () -> super.findEmployee(id));
+    }
+
+    @Override
+    public Employee findEmployee(final Long id, final CacheMode mode) {
+        return metrics.time("findEmployee(Long,CacheMode)", () -> super.findEmployee(id, mode));
+    }
+
+    @Override
+    public int getEmployeeCount() {
+        return metrics.time("getEmployeeCount", () -> super.getEmployeeCount());
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.manytoonerelation.service;
+
+import george.manytoonerelation.service.exceptions.StaleEntityException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.RollbackException;
+
+/**
+ * Runs several controller operations over one EntityManager and one
+ * transaction:
+ *
+ * <pre>
+ * UnitOfWork.run(emf, (em) -&gt; {
+ *     departmentCtrl.create(department);
+ *     employeeCtrl.create(employee1, employee2, employee3);
+ * });
+ * </pre>
+ *
+ * The unit is bound to the calling thread. While it is active, the
+ * controllers of the same EntityManagerFactory get its EntityManager from
+ * {@code getEntityManager()}, so their begin/commit only mark their own part
+ * as done, their close is ignored, and a rollback marks the whole unit
+ * rollback-only. A unit started inside another unit of the same factory
+ * joins it. Everything is committed, or rolled back if the work throws, when
+ * the outermost unit ends.
+ * <p>
+ * Inside a unit nothing is written before that commit, so an {@code edit}
+ * of an entity that another transaction has changed does not fail in the
+ * controller: the unit throws the {@link StaleEntityException} when it
+ * commits, and nothing of the unit is written. Streams of the controllers
+ * clear their EntityManager as they go, which would detach the entities of
+ * the unit, so they cannot be opened inside a unit.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class UnitOfWork {
+
+    public interface Work<T, E extends Exception> {
+
+        T execute(EntityManager em) throws E;
+    }
+
+    public interface Action<E extends Exception> {
+
+        void execute(EntityManager em) throws E;
+    }
+
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    private final EntityManagerFactory emf;
+    private final EntityManager em;
+    private final UnitOfWork outer;
+    private final List<Runnable> afterCompletion = new ArrayList<>();
+
+    private UnitOfWork(EntityManagerFactory emf, UnitOfWork outer) {
+        this.emf = emf;
+        this.em = emf.createEntityManager();
+        this.outer = outer;
+    }
+
+    public static <T, E extends Exception> T call(EntityManagerFactory emf, Work<T, E> work)
+            throws E, StaleEntityException {
+        UnitOfWork current = current(emf);
+        if (current != null) {
+            return work.execute(current.em);
+        }
+        UnitOfWork unit = new UnitOfWork(emf, CURRENT.get());
+        CURRENT.set(unit);
+        try {
+            unit.em.getTransaction().begin();
+            T result = work.execute(unit.em);
+            try {
+                unit.em.getTransaction().commit();
+            } catch (RollbackException ex) {
+                if (ex.getCause() instanceof OptimisticLockException) {
+                    throw stale(emf, (OptimisticLockException) ex.getCause());
+                }
+                throw ex;
+            }
+            return result;
+        } finally {
+            try {
+                if (unit.em.getTransaction().isActive()) {
+                    unit.em.getTransaction().rollback();
+                }
+                unit.em.close();
+            } finally {
+                if (unit.outer == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(unit.outer);
+                }
+                unit.afterCompletion.forEach(Runnable::run);
+            }
+        }
+    }
+
+    public static <E extends Exception> void run(EntityManagerFactory emf, Action<E> action)
+            throws E, StaleEntityException {
+        call(emf, (em) -> {
+            action.execute(em);
+            return null;
+        });
+    }
+
+    public static boolean isActive(EntityManagerFactory emf) {
+        return current(emf) != null;
+    }
+
+    private static StaleEntityException stale(EntityManagerFactory emf, OptimisticLockException cause) {
+        Object entity = cause.getEntity();
+        String what = entity == null ? "an entity"
+                : "the " + entity.getClass().getSimpleName().toLowerCase() + " with id "
+                + emf.getPersistenceUnitUtil().getIdentifier(entity);
+        return new StaleEntityException("The unit of work was rolled back: " + what
+                + " was changed or removed since it was read.", cause);
+    }
+
+    private static UnitOfWork current(EntityManagerFactory emf) {
+        for (UnitOfWork unit = CURRENT.get(); unit != null; unit = unit.outer) {
+            if (unit.emf == emf) {
+                return unit;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The EntityManager a controller method should use: a view of the active
+     * unit's EntityManager, or a new one when there is no unit.
+     */
+    static EntityManager entityManager(EntityManagerFactory emf) {
+        UnitOfWork unit = current(emf);
+        if (unit == null) {
+            return emf.createEntityManager();
+        }
+        return (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(),
+                new Class<?>[]{EntityManager.class}, new Participant(unit.em));
+    }
+
+    /**
+     * Runs {@code task} once the active unit of {@code emf} has ended, or now
+     * if there is none.
+     */
+    static void afterCompletion(EntityManagerFactory emf, Runnable task) {
+        UnitOfWork unit = current(emf);
+        if (unit == null) {
+            task.run();
+        } else {
+            unit.afterCompletion.add(task);
+        }
+    }
+
+    private static final class Participant implements InvocationHandler {
+
+        private final EntityManager em;
+        private final EntityTransaction transaction;
+
+        Participant(EntityManager em) {
+            this.em = em;
+            this.transaction = new JoinedTransaction(em.getTransaction());
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    return null;
+                case "getTransaction":
+                    return transaction;
+                case "clear":
+                    throw new IllegalStateException("Cannot clear the EntityManager of a unit of work");
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(em, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    private static final class JoinedTransaction implements EntityTransaction {
+
+        private final EntityTransaction unit;
+        private boolean active;
+
+        JoinedTransaction(EntityTransaction unit) {
+            this.unit = unit;
+        }
+
+        @Override
+        public void begin() {
+            if (active) {
+                throw new IllegalStateException("Transaction is already active");
+            }
+            active = true;
+        }
+
+        @Override
+        public void commit() {
+            if (!active) {
+                throw new IllegalStateException("Transaction is not active");
+            }
+            active = false;
+        }
+
+        @Override
+        public void rollback() {
+            if (!active) {
+                throw new IllegalStateException("Transaction is not active");
+            }
+            active = false;
+            unit.setRollbackOnly();
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            unit.setRollbackOnly();
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return unit.getRollbackOnly();
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+    }
+}
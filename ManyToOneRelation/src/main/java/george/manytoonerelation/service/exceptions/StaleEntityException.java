@@ -0,0 +1,10 @@
+package george.manytoonerelation.service.exceptions;
+
+public class StaleEntityException extends Exception {
+    public StaleEntityException(String message, Throwable cause) {
+        super(message, cause);
+    }
+    public StaleEntityException(String message) {
+        super(message);
+    }
+}
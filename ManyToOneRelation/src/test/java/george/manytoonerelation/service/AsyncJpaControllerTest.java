@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.manytoonerelation.service;
+
+import george.manytoonerelation.entity.Employee;
+import george.manytoonerelation.service.exceptions.NonexistentEntityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs {@link AsyncJpaController} calls against an in-memory Derby database
+ * and checks how their results and checked exceptions reach the caller.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class AsyncJpaControllerTest {
+
+    private static EntityManagerFactory emf;
+    private static BoundedExecutor executor;
+    private static AsyncJpaController async;
+
+    @BeforeClass
+    public static void createDatabase() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+        properties.put("javax.persistence.jdbc.url", "jdbc:derby:memory:AsyncJpaControllerTest;create=true");
+        emf = Persistence.createEntityManagerFactory("ManyToOneRelationJPA", properties);
+        executor = new BoundedExecutor(2);
+        async = new AsyncJpaController(new EmployeeJpaController(emf), new DepartmentJpaController(emf), executor);
+    }
+
+    @AfterClass
+    public static void close() throws InterruptedException {
+        executor.close();
+        emf.close();
+    }
+
+    @Test
+    public void callsCompleteWithTheControllerResult() throws Exception {
+        Employee employee = new Employee(null, "Async", 1000, "Clerk");
+        async.create(employee).get(10, TimeUnit.SECONDS);
+        assertEquals("Async", async.findEmployee(employee.getId()).get(10, TimeUnit.SECONDS).getEname());
+    }
+
+    @Test
+    public void checkedExceptionIsTheCauseOfJoinAndGet() throws Exception {
+        CompletableFuture<Void> destroy = async.destroyEmployee(-1L);
+        try {
+            destroy.join();
+            fail("Destroying a missing employee succeeded");
+        } catch (CompletionException ex) {
+            // wrapped once, not in a second CompletionException by supplyAsync
+            assertTrue(String.valueOf(ex.getCause()), ex.getCause() instanceof NonexistentEntityException);
+        }
+        try {
+            destroy.get();
+            fail("Destroying a missing employee succeeded");
+        } catch (ExecutionException ex) {
+            assertTrue(String.valueOf(ex.getCause()), ex.getCause() instanceof NonexistentEntityException);
+        }
+        Throwable seen = destroy.handle((result, ex) -> ex).join();
+        assertTrue(String.valueOf(seen), seen instanceof CompletionException);
+        assertTrue(String.valueOf(seen.getCause()), seen.getCause() instanceof NonexistentEntityException);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.manytoonerelation.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the limits of {@link BoundedExecutor}: saturated submits block or
+ * time out, tasks submitted from its own tasks run inline, and at most
+ * {@code maxConcurrency} tasks run at once on either kind of thread.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class BoundedExecutorTest {
+
+    private static final long WAIT_SECONDS = 10;
+
+    @Test
+    public void saturatedSubmitBlocksUntilASlotFrees() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor(1, 1, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> await(release));
+            executor.execute(() -> await(release));
+            assertEquals(2, executor.getInFlight());
+
+            CountDownLatch submitted = new CountDownLatch(1);
+            Thread submitter = new Thread(() -> {
+                executor.execute(() -> { });
+                submitted.countDown();
+            });
+            submitter.setDaemon(true);
+            submitter.start();
+            assertFalse("submit returned while the executor was saturated",
+                    submitted.await(200, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            assertTrue(submitted.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.close();
+        }
+        assertEquals(0, executor.getInFlight());
+    }
+
+    @Test
+    public void saturatedSubmitIsRejectedAfterTheTimeout() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor(1, 0, 100, TimeUnit.MILLISECONDS);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> await(release));
+            long start = System.nanoTime();
+            try {
+                executor.execute(() -> { });
+                fail("A saturated executor accepted a task");
+            } catch (RejectedExecutionException ex) {
+                assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            assertEquals(1, executor.getInFlight());
+        } finally {
+            release.countDown();
+            executor.close();
+        }
+    }
+
+    @Test
+    public void nestedSubmitRunsInlineOnTheWorker() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor(1, 0, 100, TimeUnit.MILLISECONDS);
+        try {
+            CompletableFuture<Thread[]> threads = executor.supply(() -> {
+                Thread outer = Thread.currentThread();
+                // the only slot is taken by this task; a queued submit would be rejected
+                Thread inner = executor.supply(Thread::currentThread).join();
+                return new Thread[]{outer, inner};
+            });
+            Thread[] ran = threads.get(WAIT_SECONDS, TimeUnit.SECONDS);
+            assertSame(ran[0], ran[1]);
+        } finally {
+            executor.close();
+        }
+    }
+
+    @Test
+    public void usesVirtualThreadsOnlyWhenTheJdkHasThem() throws Exception {
+        boolean jdkHasVirtualThreads;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            jdkHasVirtualThreads = true;
+        } catch (NoSuchMethodException ex) {
+            jdkHasVirtualThreads = false;
+        }
+        BoundedExecutor executor = new BoundedExecutor(2);
+        try {
+            assertEquals(jdkHasVirtualThreads, executor.isVirtual());
+            Thread worker = executor.supply(Thread::currentThread).get(WAIT_SECONDS, TimeUnit.SECONDS);
+            if (!jdkHasVirtualThreads) {
+                assertTrue(worker.getName(), worker.getName().startsWith("jpa-async-"));
+                assertTrue(worker.isDaemon());
+            }
+        } finally {
+            executor.close();
+        }
+    }
+
+    @Test
+    public void runsAtMostMaxConcurrencyTasksAtOnce() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try {
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(20);
+                    running.decrementAndGet();
+                }, executor));
+            }
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).get(WAIT_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            executor.close();
+        }
+        assertTrue("ran " + maxRunning.get() + " at once", maxRunning.get() <= 2);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.manytoonerelation.service;
+
+import george.common.Patch;
+import george.common.QueryPlans;
+import george.common.SqlLog;
+import george.manytoonerelation.entity.Department;
+import george.manytoonerelation.entity.Employee;
+import george.manytoonerelation.entity.Employee_;
+import george.manytoonerelation.service.exceptions.StaleEntityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Counts the SELECTs the employee finders send for employees and their
+ * departments, against an in-memory Derby database with a cold shared cache,
+ * and checks with Derby's runtime statistics that the finders by column read
+ * through the indexes declared on {@link Employee}, and how creates, edits,
+ * patches and streams behave inside a {@link UnitOfWork}.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class EmployeeJpaControllerTest {
+
+    private static final int DEPARTMENTS = 20;
+    private static final int EMPLOYEES = 100;
+    private static final int DEGS = 10;
+
+    private static EntityManagerFactory emf;
+    private static SqlLog sql;
+    private static EmployeeJpaController controller;
+    private static List<Department> departments;
+
+    @BeforeClass
+    public static void createEmployees() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+        properties.put("javax.persistence.jdbc.url", "jdbc:derby:memory:EmployeeJpaControllerTest;create=true");
+        emf = Persistence.createEntityManagerFactory("ManyToOneRelationJPA", properties);
+        sql = SqlLog.install(emf);
+        controller = new EmployeeJpaController(emf);
+        DepartmentJpaController departmentController = new DepartmentJpaController(emf);
+        departments = new ArrayList<>();
+        for (int i = 0; i < DEPARTMENTS; i++) {
+            Department department = new Department();
+            department.setName("Department " + i);
+            departmentController.create(department);
+            departments.add(department);
+        }
+        for (int i = 0; i < EMPLOYEES; i++) {
+            Employee employee = new Employee(null, "Employee " + i, 1000 + i, "Deg " + i % DEGS);
+            employee.setDepartment(departments.get(i % DEPARTMENTS));
+            controller.create(employee);
+        }
+    }
+
+    @AfterClass
+    public static void close() {
+        emf.close();
+    }
+
+    @Before
+    public void coldCache() {
+        emf.getCache().evictAll();
+        sql.clear();
+    }
+
+    @Test
+    public void joinFetchReadsEmployeesAndDepartmentsInOneSelect() {
+        assertDepartmentsLoaded(controller.findEmployeeEntitiesWithDepartment(), EMPLOYEES);
+        assertEquals(sql.selects().toString(), 1, sql.selects().size());
+    }
+
+    @Test
+    public void joinFetchReadsAPageInOneSelect() {
+        assertDepartmentsLoaded(controller.findEmployeeEntitiesWithDepartment(10, 40), 10);
+        assertEquals(sql.selects().toString(), 1, sql.selects().size());
+    }
+
+    @Test
+    public void batchFetchReadsDepartmentsInOneInQuery() {
+        assertDepartmentsLoaded(controller.findEmployeeEntities(), EMPLOYEES);
+        assertEquals(sql.selects().toString(), 2, sql.selects().size());
+    }
+
+    @Test
+    public void findByDegReadsTheDegIndex() {
+        assertThat(indexesUsedBy(finder -> assertEquals(EMPLOYEES / DEGS,
+                finder.findEmployeeEntitiesByDeg("Deg 7").size())), hasItem("EMPLOYEE_MTO_DEG_IDX"));
+    }
+
+    @Test
+    public void findByEnamePrefixReadsTheEnameIndex() {
+        assertThat(indexesUsedBy(finder -> assertEquals(11,
+                finder.findEmployeeEntitiesByEnamePrefix("Employee 1").size())),
+                hasItem("EMPLOYEE_MTO_ENAME_IDX"));
+    }
+
+    @Test
+    public void findByDepartmentReadsTheDepartmentIndex() {
+        assertThat(indexesUsedBy(finder -> assertEquals(EMPLOYEES / DEPARTMENTS,
+                finder.findEmployeeEntitiesByDepartment(departments.get(3).getId()).size())),
+                hasItem("EMPLOYEE_MTO_DEPARTMENT_IDX"));
+    }
+
+    @Test
+    public void staleEditInsideAUnitFailsTheUnit() throws Exception {
+        Long id = departments.get(0).getId();
+        Employee first = controller.findEmployeeEntitiesByDepartment(id).get(0);
+        Employee second = controller.findEmployee(first.getId());
+        first.setSalary(first.getSalary() + 1);
+        controller.edit(first);
+        second.setSalary(0);
+        try {
+            UnitOfWork.run(emf, (em) -> controller.edit(second));
+            fail("The unit committed a stale employee");
+        } catch (StaleEntityException ex) {
+            assertEquals(first.getSalary(), controller.findEmployee(first.getId()).getSalary(), 0);
+        }
+    }
+
+    @Test
+    public void unitWritesDepartmentAndEmployeesInOneCommit() throws Exception {
+        Department department = new Department();
+        department.setName("Unit department");
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Employee employee = new Employee(null, "Unit employee " + i, 1000 + i, "Unit");
+            employee.setDepartment(department);
+            employees.add(employee);
+        }
+        DepartmentJpaController departmentController = new DepartmentJpaController(emf);
+        try {
+            int count = UnitOfWork.call(emf, (em) -> {
+                departmentController.create(department);
+                controller.create(employees.toArray(new Employee[0]));
+                return controller.getEmployeeCount();
+            });
+            assertEquals(EMPLOYEES + employees.size(), count);
+            // one INSERT for the department and one batch for the employees, flushed by the COUNT
+            assertEquals(sql.statements().toString(), 2, statementsStartingWith("INSERT"));
+            assertEquals(sql.statements().toString(), 1, statementsStartingWith("SELECT COUNT"));
+            // id preallocation, when the unit runs out of ids, commits in a transaction of its own
+            assertEquals(1 + statementsStartingWith("UPDATE SEQUENCE"), sql.commits());
+            assertEquals(department.getId(), controller.findEmployee(employees.get(0).getId()).getDepartment().getId());
+        } finally {
+            controller.destroyAll(new EmployeeFilter().deg("Unit"));
+            if (department.getId() != null) {
+                departmentController.destroy(department.getId());
+            }
+        }
+    }
+
+    @Test
+    public void patchInsideAUnitEvictsTheEmployeeWhenTheUnitEnds() throws Exception {
+        Employee employee = controller.findEmployeeEntitiesByDeg("Deg 3").get(0);
+        assertTrue(emf.getCache().contains(Employee.class, employee.getId()));
+        UnitOfWork.run(emf, (em) -> {
+            controller.patchEmployee(employee.getId(), new Patch<Employee>().set(Employee_.salary, 5000.0));
+            assertTrue(emf.getCache().contains(Employee.class, employee.getId()));
+        });
+        assertFalse(emf.getCache().contains(Employee.class, employee.getId()));
+        assertEquals(5000, controller.findEmployee(employee.getId()).getSalary(), 0);
+    }
+
+    @Test
+    public void parallelScanReadsWhatASequentialStreamReads() {
+        Map<Long, String> sequential;
+        try (Stream<Employee> employees = controller.streamEmployeeEntities()) {
+            sequential = employees.collect(Collectors.toMap(Employee::getId, Employee::getEname));
+        }
+        sql.clear();
+        Map<Long, String> parallel = controller.scanEmployeeEntities(
+                Collectors.toMap(Employee::getId, Employee::getEname), 4);
+        assertEquals(EMPLOYEES, parallel.size());
+        assertEquals(sequential, parallel);
+        assertTrue(sql.selects().toString(), statementsContaining("BETWEEN") > 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void streamInsideAUnitIsRejected() throws Exception {
+        UnitOfWork.run(emf, (em) -> controller.streamEmployeeEntities().close());
+    }
+
+    private static int statementsStartingWith(String prefix) {
+        int count = 0;
+        for (String statement : sql.statements()) {
+            if (statement.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int statementsContaining(String text) {
+        int count = 0;
+        for (String statement : sql.statements()) {
+            if (statement.contains(text)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Iterable<String> indexesUsedBy(Consumer<EmployeeJpaController> finder) {
+        try (QueryPlans plans = QueryPlans.record(emf)) {
+            finder.accept(new EmployeeJpaController(emf) {
+                @Override
+                public EntityManager getEntityManager() {
+                    return plans.entityManager();
+                }
+            });
+            return plans.indexes();
+        }
+    }
+
+    private static void assertDepartmentsLoaded(List<Employee> employees, int size) {
+        assertEquals(size, employees.size());
+        for (Employee employee : employees) {
+            assertNotNull(employee.getDepartment().getName());
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.manytoonerelation.service;
+
+import george.manytoonerelation.entity.Employee;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs {@link GroupCommit} against an in-memory Derby database: concurrent
+ * creates share a commit, a failing request fails only its own caller, and
+ * close commits what is queued.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class GroupCommitTest {
+
+    private static final int CALLERS = 4;
+
+    private static EntityManagerFactory emf;
+
+    @BeforeClass
+    public static void createDatabase() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+        properties.put("javax.persistence.jdbc.url", "jdbc:derby:memory:GroupCommitTest;create=true");
+        emf = Persistence.createEntityManagerFactory("ManyToOneRelationJPA", properties);
+    }
+
+    @AfterClass
+    public static void close() {
+        emf.close();
+    }
+
+    @Test
+    public void concurrentCreatesShareOneCommit() throws Exception {
+        try (GroupCommit groupCommit = new GroupCommit(emf, 500, TimeUnit.MILLISECONDS, 1000)) {
+            List<Employee> employees = newEmployees("Shared", CALLERS);
+            assertEquals(Collections.nCopies(CALLERS, null), createConcurrently(groupCommit, employees));
+            assertEquals(1, groupCommit.getCommits());
+            assertEquals(CALLERS, groupCommit.getRequests());
+            assertCommitted(employees);
+        }
+    }
+
+    @Test
+    public void duplicateKeyFailsOnlyItsCaller() throws Exception {
+        Employee existing = newEmployees("Existing", 1).get(0);
+        new EmployeeJpaController(emf).create(existing);
+        try (GroupCommit groupCommit = new GroupCommit(emf, 500, TimeUnit.MILLISECONDS, 1000)) {
+            List<Employee> employees = newEmployees("Isolated", CALLERS);
+            Employee duplicate = employees.get(1);
+            duplicate.setId(existing.getId());
+            List<Throwable> failures = createConcurrently(groupCommit, employees);
+            for (int i = 0; i < CALLERS; i++) {
+                if (i == 1) {
+                    assertTrue(String.valueOf(failures.get(i)), failures.get(i) instanceof PersistenceException);
+                } else {
+                    assertEquals(null, failures.get(i));
+                }
+            }
+            assertEquals(CALLERS - 1, groupCommit.getRequests());
+            employees.remove(duplicate);
+            // retried after the shared transaction failed, with the ids given in the failed attempt
+            assertCommitted(employees);
+            assertCommitted(Collections.singletonList(existing));
+        }
+    }
+
+    @Test
+    public void closeCommitsTheQueueAndRejectsNewRequests() throws Exception {
+        GroupCommit groupCommit = new GroupCommit(emf, 1, TimeUnit.MINUTES, 1000);
+        List<Employee> employees = newEmployees("Drained", 3);
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for (Employee employee : employees) {
+            done.add(groupCommit.submit(Collections.singletonList(employee)));
+        }
+        long start = System.nanoTime();
+        groupCommit.close();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+        for (CompletableFuture<Void> request : done) {
+            request.get(0, TimeUnit.SECONDS);
+        }
+        assertEquals(1, groupCommit.getCommits());
+        assertCommitted(employees);
+        try {
+            groupCommit.submit(newEmployees("Late", 1));
+            fail("A closed group commit accepted a request");
+        } catch (RejectedExecutionException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Creates every employee from a thread of its own through a controller
+     * sharing {@code groupCommit}, and returns what each create threw.
+     */
+    private static List<Throwable> createConcurrently(GroupCommit groupCommit, List<Employee> employees)
+            throws InterruptedException {
+        EmployeeJpaController controller = new EmployeeJpaController(emf, null, groupCommit);
+        ExecutorService callers = Executors.newFixedThreadPool(employees.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> calls = new ArrayList<>();
+            for (Employee employee : employees) {
+                calls.add(callers.submit(() -> {
+                    start.await();
+                    controller.create(employee);
+                    return null;
+                }));
+            }
+            start.countDown();
+            List<Throwable> failures = new ArrayList<>();
+            for (Future<?> call : calls) {
+                try {
+                    call.get();
+                    failures.add(null);
+                } catch (ExecutionException ex) {
+                    failures.add(ex.getCause());
+                }
+            }
+            return failures;
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    private static List<Employee> newEmployees(String prefix, int count) {
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            employees.add(new Employee(null, prefix + " " + i, 1000 + i, "Clerk"));
+        }
+        return employees;
+    }
+
+    /**
+     * Checks that every employee has a row with its id, its name and the
+     * first version.
+     */
+    private static void assertCommitted(List<Employee> employees) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            for (Employee employee : employees) {
+                assertNotNull(employee.getId());
+                Employee row = em.find(Employee.class, employee.getId(),
+                        Collections.singletonMap("javax.persistence.cache.retrieveMode", "BYPASS"));
+                assertNotNull("no row for " + employee.getEname(), row);
+                assertEquals(employee.getEname(), row.getEname());
+                assertEquals(Long.valueOf(1), row.getVersion());
+            }
+        } finally {
+            em.close();
+        }
+    }
+}
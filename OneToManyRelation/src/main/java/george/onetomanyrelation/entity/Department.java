@@ -27,12 +27,18 @@ package george.onetomanyrelation.entity;
 
 import java.io.Serializable;
 import java.util.List;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Version;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.CacheIsolationType;
 
 /**
  *
@@ -40,12 +46,18 @@ import javax.persistence.Table;
  */
 @Entity
 @Table (name="DEPARTMENT_OTM")
+@Cacheable
+@Cache(type = CacheType.SOFT_WEAK, size = 256, isolation = CacheIsolationType.SHARED)
 public class Department implements Serializable, Model {
 
     private static final long serialVersionUID = 1L;
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TableGenerator(name = "DEPARTMENT_OTM_SEQ", table = "SEQUENCE", pkColumnName = "SEQ_NAME",
+            valueColumnName = "SEQ_COUNT", allocationSize = 10)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "DEPARTMENT_OTM_SEQ")
     private Long id;
+    @Version
+    private Long version;
     
     private String name;
     
@@ -60,6 +72,14 @@ public class Department implements Serializable, Model {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getName() {
         return name;
     }
@@ -26,24 +26,39 @@
 package george.onetomanyrelation.entity;
 
 import java.io.Serializable;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Version;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.CacheIsolationType;
 
 /**
  *
  * @author George Shumakov <george.shumakov@gmail.com>
  */
 @Entity
-@Table(name = "EMPLOYEE_OTM")
+@Table(name = "EMPLOYEE_OTM", indexes = {
+    @Index(name = "EMPLOYEE_OTM_DEG_IDX", columnList = "DEG"),
+    @Index(name = "EMPLOYEE_OTM_ENAME_IDX", columnList = "ENAME")})
+@Cacheable
+@Cache(type = CacheType.SOFT_WEAK, size = 1000, expiry = 60000, isolation = CacheIsolationType.SHARED)
 public class Employee implements Serializable, Model {
 
     private static final long serialVersionUID = 1L;
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TableGenerator(name = "EMPLOYEE_OTM_SEQ", table = "SEQUENCE", pkColumnName = "SEQ_NAME",
+            valueColumnName = "SEQ_COUNT", allocationSize = 100)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "EMPLOYEE_OTM_SEQ")
     private Long id;
+    @Version
+    private Long version;
 
     private String ename;
     private double salary;
@@ -65,6 +80,14 @@ public class Employee implements Serializable, Model {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getEname() {
         return ename;
     }
@@ -26,11 +26,17 @@
 package george.onetoonerelation.entity;
 
 import java.io.Serializable;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Version;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.CacheIsolationType;
 
 /**
  *
@@ -38,12 +44,18 @@ import javax.persistence.Table;
  */
 @Entity
 @Table (name ="DEPARTMENT_OTO")
+@Cacheable
+@Cache(type = CacheType.SOFT_WEAK, size = 256, isolation = CacheIsolationType.SHARED)
 public class Department implements Serializable, Model {
 
     private static final long serialVersionUID = 1L;
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TableGenerator(name = "DEPARTMENT_OTO_SEQ", table = "SEQUENCE", pkColumnName = "SEQ_NAME",
+            valueColumnName = "SEQ_COUNT", allocationSize = 10)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "DEPARTMENT_OTO_SEQ")
     private Long id;
+    @Version
+    private Long version;
 
     public Long getId() {
         return id;
@@ -52,6 +64,14 @@ public class Department implements Serializable, Model {
     public void setId(Long id) {
         this.id = id;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
     private String name;
     
     @Override
@@ -26,25 +26,40 @@
 package george.onetoonerelation.entity;
 
 import java.io.Serializable;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Version;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.CacheIsolationType;
 
 /**
  *
  * @author George Shumakov <george.shumakov@gmail.com>
  */
 @Entity
-@Table (name ="EMPLOYEE_OTO")
+@Table(name = "EMPLOYEE_OTO", indexes = {
+    @Index(name = "EMPLOYEE_OTO_DEG_IDX", columnList = "DEG"),
+    @Index(name = "EMPLOYEE_OTO_ENAME_IDX", columnList = "ENAME")})
+@Cacheable
+@Cache(type = CacheType.SOFT_WEAK, size = 1000, expiry = 60000, isolation = CacheIsolationType.SHARED)
 public class Employee implements Serializable, Model {
 
     private static final long serialVersionUID = 1L;
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TableGenerator(name = "EMPLOYEE_OTO_SEQ", table = "SEQUENCE", pkColumnName = "SEQ_NAME",
+            valueColumnName = "SEQ_COUNT", allocationSize = 100)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "EMPLOYEE_OTO_SEQ")
     private Long id;
+    @Version
+    private Long version;
     private String ename;
    private double salary;
    private String deg;
@@ -68,6 +83,14 @@ public class Employee implements Serializable, Model {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getEname() {
         return ename;
     }
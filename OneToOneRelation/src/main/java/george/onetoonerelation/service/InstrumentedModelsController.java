@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.onetoonerelation.service;
+
+import george.common.CacheMode;
+import george.common.ControllerMetrics;
+import george.common.KeysetPage;
+import george.common.Patch;
+import george.common.ResultCache;
+import george.onetoonerelation.entity.Department;
+import george.onetoonerelation.entity.Employee;
+import george.onetoonerelation.entity.Model;
+import george.onetoonerelation.service.exceptions.NonexistentEntityException;
+import george.onetoonerelation.service.exceptions.StaleEntityException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * ModelsController that records the count, errors and latency of every call
+ * in {@link ControllerMetrics}, published over JMX.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class InstrumentedModelsController extends ModelsController implements AutoCloseable {
+
+    private final ControllerMetrics metrics;
+
+    public InstrumentedModelsController(EntityManagerFactory emf) {
+        this(emf, null, new ControllerMetrics("george.onetoonerelation", "ModelsController"));
+    }
+
+    public InstrumentedModelsController(EntityManagerFactory emf, ResultCache resultCache, ControllerMetrics metrics) {
+        super(emf, resultCache);
+        this.metrics = metrics;
+    }
+
+    public ControllerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Unregisters the MBeans of this controller.
+     */
+    @Override
+    public void close() {
+        metrics.close();
+    }
+
+    @Override
+    public void create(final Model... models) {
+        metrics.time("create", () -> {
+            super.create(models);
+            return null;
+        });
+    }
+
+    @Override
+    public void edit(final Model model) throws StaleEntityException, Exception {
+        metrics.time("edit", () -> {
+            super.edit(model);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean patchEmployee(final Long id, final Patch<Employee> patch) {
+        return metrics.time("patchEmployee", () -> super.patchEmployee(id, patch));
+    }
+
+    @Override
+    public void destroy(final Long id) throws NonexistentEntityException {
+        metrics.time("destroy", () -> {
+            super.destroy(id);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntities() {
+        return metrics.time("findEmployeeEntities()", () -> super.findEmployeeEntities());
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntities(final int maxResults, final int firstResult) {
+        return metrics.time("findEmployeeEntities(int,int)", () -> super.findEmployeeEntities(maxResults, firstResult));
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntitiesByDeg(final String deg) {
+        return metrics.time("findEmployeeEntitiesByDeg", () -> super.findEmployeeEntitiesByDeg(deg));
+    }
+
+    @Override
+    public List<Employee> findEmployeeEntitiesByEnamePrefix(final String enamePrefix) {
+        return metrics.time("findEmployeeEntitiesByEnamePrefix", () -> super.findEmployeeEntitiesByEnamePrefix(enamePrefix));
+    }
+
+    @Override
+    public KeysetPage<Employee> findEmployeeEntitiesAfter(final Long lastId, final int maxResults) {
+        return metrics.time("findEmployeeEntitiesAfter", () -> super.findEmployeeEntitiesAfter(lastId, maxResults));
+    }
+
+    @Override
+    public List<Optional<Employee>> findEmployees(final Collection<Long> ids) {
+        return metrics.time("findEmployees", () -> super.findEmployees(ids));
+    }
+
+    @Override
+    public Employee findEmployee(final Long id) {
+        return metrics.time("findEmployee(Long)", () -> super.findEmployee(id));
+    }
+
+    @Override
+    public Employee findEmployee(final Long id, final CacheMode mode) {
+        return metrics.time("findEmployee(Long,CacheMode)", () -> super.findEmployee(id, mode));
+    }
+
+    @Override
+    public Department findDepartment(final Long id) {
+        return metrics.time("findDepartment(Long)", () -> super.findDepartment(id));
+    }
+
+    @Override
+    public Department findDepartment(final Long id, final CacheMode mode) {
+        return metrics.time("findDepartment(Long,CacheMode)", () -> super.findDepartment(id, mode));
+    }
+
+    @Override
+    public int getEmployeeCount() {
+        return metrics.time("getEmployeeCount", () -> super.getEmployeeCount());
+    }
+}
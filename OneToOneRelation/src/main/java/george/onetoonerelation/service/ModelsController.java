@@ -25,19 +25,42 @@
  */
 package george.onetoonerelation.service;
 
+import george.common.CacheMode;
+import george.common.EntityCursors;
+import george.common.EntityLookups;
+import george.common.KeysetPage;
+import george.common.Patch;
+import george.common.ResultCache;
+import george.common.ResultCache.Reads;
 import george.onetoonerelation.entity.Department;
 import george.onetoonerelation.entity.Employee;
+import george.onetoonerelation.entity.Employee_;
 import george.onetoonerelation.entity.Model;
 import george.onetoonerelation.service.exceptions.NonexistentEntityException;
+import george.onetoonerelation.service.exceptions.StaleEntityException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.Persistence;
+import javax.persistence.RollbackException;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
 
 /**
  *
@@ -85,12 +108,45 @@ public class ModelsController extends Thread implements Serializable {
     public ModelsController(EntityManagerFactory emf) {
         this.emf = emf;
     }
+
+    public ModelsController(EntityManagerFactory emf, ResultCache resultCache) {
+        this.emf = emf;
+        this.resultCache = resultCache;
+    }
     private EntityManagerFactory emf = null;
+    private ResultCache resultCache = null;
 
     public EntityManager getEntityManager() {
         return emf.createEntityManager();
     }
 
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    private <T> T cached(String key, Reads reads, Supplier<T> loader) {
+        return resultCache == null ? loader.get() : resultCache.get(key, Employee.class, reads, loader);
+    }
+
+    private <T extends Employee> List<T> cachedList(String key, Reads reads, Supplier<List<T>> loader) {
+        if (resultCache == null) {
+            return loader.get();
+        }
+        return resultCache.getEntities(key, emf, Employee.class, reads, loader);
+    }
+
+    private void rowsChanged(Class<?> type) {
+        if (resultCache != null) {
+            resultCache.rowsChanged(type);
+        }
+    }
+
+    private void valuesChanged(Class<?> type) {
+        if (resultCache != null) {
+            resultCache.valuesChanged(type);
+        }
+    }
+
     public void create(Model... models) {
         if (models != null && models.length != 0) {
             EntityManager em = null;
@@ -105,33 +161,68 @@ public class ModelsController extends Thread implements Serializable {
                 if (em != null) {
                     em.close();
                 }
+                for (Model model : models) {
+                    rowsChanged(model.getClass());
+                }
             }
         }
     }
 
-    public void edit(Model model) throws NonexistentEntityException, Exception {
+    /**
+     * Merges {@code model} with a version-checked UPDATE. Throws
+     * StaleEntityException when the employee was changed or removed since
+     * {@code model} was read.
+     */
+    public void edit(Model model) throws StaleEntityException, Exception {
         EntityManager em = null;
         try {
             em = getEntityManager();
             em.getTransaction().begin();
             model = em.merge(model);
             em.getTransaction().commit();
-        } catch (Exception ex) {
-            String msg = ex.getLocalizedMessage();
-            if (msg == null || msg.length() == 0) {
-                Long id = model.getId();
-                if (findEmployee(id) == null) {
-                    throw new NonexistentEntityException("The employee with id " + id + " no longer exists.");
-                }
+        } catch (OptimisticLockException ex) {
+            throw stale(model.getId(), ex);
+        } catch (RollbackException ex) {
+            if (ex.getCause() instanceof OptimisticLockException) {
+                throw stale(model.getId(), ex.getCause());
             }
             throw ex;
         } finally {
             if (em != null) {
                 em.close();
             }
+            valuesChanged(model.getClass());
+        }
+    }
+
+    /**
+     * Writes the attributes in {@code patch} to the employee with id {@code id}
+     * with one UPDATE, without loading the employee first. Returns false when
+     * there is no such employee.
+     */
+    public boolean patchEmployee(Long id, Patch<Employee> patch) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            Query q = patch.toQuery(em, Employee.class, id);
+            q.setHint(QueryHints.BATCH_WRITING, HintValues.FALSE);
+            em.getTransaction().begin();
+            int rows = q.executeUpdate();
+            em.getTransaction().commit();
+            emf.getCache().evict(Employee.class, id);
+            return rows == 1;
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+            valuesChanged(Employee.class);
         }
     }
 
+    private static StaleEntityException stale(Long id, Throwable cause) {
+        return new StaleEntityException("The employee with id " + id + " was changed or removed since it was read.", cause);
+    }
+
     public void destroy(Long id) throws NonexistentEntityException {
         EntityManager em = null;
         try {
@@ -150,15 +241,98 @@ public class ModelsController extends Thread implements Serializable {
             if (em != null) {
                 em.close();
             }
+            rowsChanged(Employee.class);
         }
     }
 
     public List<Employee> findEmployeeEntities() {
-        return findEmployeeEntities(true, -1, -1);
+        return cachedList("findEmployeeEntities", Reads.ROWS, () -> findEmployeeEntities(true, -1, -1));
     }
 
     public List<Employee> findEmployeeEntities(int maxResults, int firstResult) {
-        return findEmployeeEntities(false, maxResults, firstResult);
+        return cachedList("findEmployeeEntities:" + maxResults + ":" + firstResult, Reads.ROWS,
+                () -> findEmployeeEntities(false, maxResults, firstResult));
+    }
+
+    public List<Employee> findEmployeeEntitiesByDeg(String deg) {
+        return cachedList("findEmployeeEntitiesByDeg:" + deg, Reads.VALUES,
+                () -> findEmployeeEntitiesWhere((cb, rt) -> cb.equal(rt.get(Employee_.deg), deg)));
+    }
+
+    /**
+     * Employees whose ename starts with {@code enamePrefix}; LIKE wildcards
+     * in the prefix match literally. Like {@link #findEmployeeEntitiesByDeg}
+     * this is answered from an index declared on {@link Employee} instead of
+     * a table scan.
+     */
+    public List<Employee> findEmployeeEntitiesByEnamePrefix(String enamePrefix) {
+        String pattern = enamePrefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return cachedList("findEmployeeEntitiesByEnamePrefix:" + enamePrefix, Reads.VALUES,
+                () -> findEmployeeEntitiesWhere((cb, rt) -> cb.like(rt.get(Employee_.ename), pattern, '\\')));
+    }
+
+    private List<Employee> findEmployeeEntitiesWhere(
+            BiFunction<CriteriaBuilder, Root<Employee>, Predicate> condition) {
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Employee> cq = cb.createQuery(Employee.class);
+            Root<Employee> rt = cq.from(Employee.class);
+            cq.select(rt).where(condition.apply(cb, rt));
+            return em.createQuery(cq).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Keyset pagination: returns up to {@code maxResults} employees with an id
+     * greater than {@code lastId}, in id order. Unlike
+     * {@link #findEmployeeEntities(int, int)} the cost does not grow with the page
+     * depth, because the primary key index is used to seek to the first row.
+     * Pass {@code null} for the first page.
+     */
+    public KeysetPage<Employee> findEmployeeEntitiesAfter(Long lastId, int maxResults) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maxResults must be positive: " + maxResults);
+        }
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Employee> cq = cb.createQuery(Employee.class);
+            Root<Employee> rt = cq.from(Employee.class);
+            if (lastId != null) {
+                cq.where(cb.greaterThan(rt.get(Employee_.id), lastId));
+            }
+            cq.select(rt).orderBy(cb.asc(rt.get(Employee_.id)));
+            TypedQuery<Employee> q = em.createQuery(cq);
+            q.setMaxResults(maxResults + 1);
+            List<Employee> employees = q.getResultList();
+            if (employees.size() > maxResults) {
+                employees = new ArrayList<>(employees.subList(0, maxResults));
+                return new KeysetPage<>(employees, employees.get(maxResults - 1).getId());
+            }
+            return new KeysetPage<>(employees, null);
+        } finally {
+            em.close();
+        }
+    }
+
+    public Stream<Employee> streamEmployeeEntities() {
+        return streamEmployeeEntities(EntityCursors.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Streams every employee through a database cursor reading
+     * {@code fetchSize} rows at a time, in constant memory. The stream holds
+     * an EntityManager and a connection until it is closed, so use it in a
+     * try-with-resources block.
+     */
+    public Stream<Employee> streamEmployeeEntities(int fetchSize) {
+        EntityManager em = getEntityManager();
+        CriteriaQuery<Employee> cq = em.getCriteriaBuilder().createQuery(Employee.class);
+        cq.select(cq.from(Employee.class));
+        return EntityCursors.stream(em, em.createQuery(cq), fetchSize);
     }
 
     private List<Employee> findEmployeeEntities(boolean all, int maxResults, int firstResult) {
@@ -177,16 +351,64 @@ public class ModelsController extends Thread implements Serializable {
         }
     }
 
+    /**
+     * Multi-get: looks up every id in {@code ids} through one EntityManager
+     * and bounded IN-list queries. The result keeps the order of {@code ids};
+     * an empty Optional marks an id with no employee.
+     */
+    public List<Optional<Employee>> findEmployees(Collection<Long> ids) {
+        EntityManager em = getEntityManager();
+        try {
+            return EntityLookups.findAll(em, Employee.class, Employee_.id, Employee::getId, ids);
+        } finally {
+            em.close();
+        }
+    }
+
     public Employee findEmployee(Long id) {
+        return findEmployee(id, CacheMode.USE.hints());
+    }
+
+    /**
+     * Looks up one employee and uses the shared cache as {@code mode} says:
+     * {@link CacheMode#BYPASS} reads the row without touching the cache and
+     * {@link CacheMode#REFRESH} also replaces the cached copy with it.
+     */
+    public Employee findEmployee(Long id, CacheMode mode) {
+        return findEmployee(id, mode.hints());
+    }
+
+    private Employee findEmployee(Long id, Map<String, Object> hints) {
         EntityManager em = getEntityManager();
         try {
-            return em.find(Employee.class, id);
+            return em.find(Employee.class, id, hints);
+        } finally {
+            em.close();
+        }
+    }
+
+    public Department findDepartment(Long id) {
+        return findDepartment(id, CacheMode.USE.hints());
+    }
+
+    public Department findDepartment(Long id, CacheMode mode) {
+        return findDepartment(id, mode.hints());
+    }
+
+    private Department findDepartment(Long id, Map<String, Object> hints) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.find(Department.class, id, hints);
         } finally {
             em.close();
         }
     }
 
     public int getEmployeeCount() {
+        return cached("getEmployeeCount", Reads.ROWS, this::countEmployees);
+    }
+
+    private int countEmployees() {
         EntityManager em = getEntityManager();
         try {
             CriteriaQuery cq = em.getCriteriaBuilder().createQuery();
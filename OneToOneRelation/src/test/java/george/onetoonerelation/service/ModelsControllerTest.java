@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.onetoonerelation.service;
+
+import george.common.QueryPlans;
+import george.onetoonerelation.entity.Employee;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Checks with Derby's runtime statistics that the employee finders read
+ * through the indexes declared on {@link Employee}.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class ModelsControllerTest {
+
+    private static final int EMPLOYEES = 200;
+    private static final int DEGS = 20;
+
+    private static EntityManagerFactory emf;
+
+    @BeforeClass
+    public static void createEmployees() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+        properties.put("javax.persistence.jdbc.url", "jdbc:derby:memory:ModelsControllerTest;create=true");
+        emf = Persistence.createEntityManagerFactory("OneToOneRelationJPA", properties);
+        Employee[] employees = new Employee[EMPLOYEES];
+        for (int i = 0; i < EMPLOYEES; i++) {
+            employees[i] = new Employee(null, "Employee " + i, 1000 + i, "Deg " + i % DEGS);
+        }
+        new ModelsController(emf).create(employees);
+    }
+
+    @AfterClass
+    public static void close() {
+        emf.close();
+    }
+
+    @Test
+    public void findByDegReadsTheDegIndex() {
+        assertThat(indexesUsedBy(controller -> assertEquals(EMPLOYEES / DEGS,
+                controller.findEmployeeEntitiesByDeg("Deg 7").size())), hasItem("EMPLOYEE_OTO_DEG_IDX"));
+    }
+
+    @Test
+    public void findByEnamePrefixReadsTheEnameIndex() {
+        assertThat(indexesUsedBy(controller -> assertEquals(11,
+                controller.findEmployeeEntitiesByEnamePrefix("Employee 12").size())),
+                hasItem("EMPLOYEE_OTO_ENAME_IDX"));
+    }
+
+    private static Iterable<String> indexesUsedBy(Consumer<ModelsController> finder) {
+        try (QueryPlans plans = QueryPlans.record(emf)) {
+            finder.accept(new ModelsController(emf) {
+                @Override
+                public EntityManager getEntityManager() {
+                    return plans.entityManager();
+                }
+            });
+            return plans.indexes();
+        }
+    }
+}
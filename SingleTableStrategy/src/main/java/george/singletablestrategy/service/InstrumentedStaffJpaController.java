@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.singletablestrategy.service;
+
+import george.common.CacheMode;
+import george.common.ControllerMetrics;
+import george.common.KeysetPage;
+import george.common.Patch;
+import george.common.ResultCache;
+import george.singletablestrategy.Staff;
+import george.singletablestrategy.service.exceptions.NonexistentEntityException;
+import george.singletablestrategy.service.exceptions.StaleEntityException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collector;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * StaffJpaController that records the count, errors and latency of every call
+ * in {@link ControllerMetrics}, published over JMX.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class InstrumentedStaffJpaController extends StaffJpaController implements AutoCloseable {
+
+    private final ControllerMetrics metrics;
+
+    public InstrumentedStaffJpaController(EntityManagerFactory emf) {
+        this(emf, null, new ControllerMetrics("george.singletablestrategy", "StaffJpaController"));
+    }
+
+    public InstrumentedStaffJpaController(EntityManagerFactory emf, ResultCache resultCache, ControllerMetrics metrics) {
+        super(emf, resultCache);
+        this.metrics = metrics;
+    }
+
+    public ControllerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Unregisters the MBeans of this controller.
+     */
+    @Override
+    public void close() {
+        metrics.close();
+    }
+
+    @Override
+    public void create(final Staff staff) {
+        metrics.time("create", () -> {
+            super.create(staff);
+            return null;
+        });
+    }
+
+    @Override
+    public void edit(final Staff staff) throws StaleEntityException, Exception {
+        metrics.time("edit", () -> {
+            super.edit(staff);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean patchStaff(final Long id, final Patch<Staff> patch) {
+        return metrics.time("patchStaff", () -> super.patchStaff(id, patch));
+    }
+
+    @Override
+    public void destroy(final Long id) throws NonexistentEntityException {
+        metrics.time("destroy", () -> {
+            super.destroy(id);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Staff> findStaffEntities() {
+        return metrics.time("findStaffEntities()", () -> super.findStaffEntities());
+    }
+
+    @Override
+    public List<Staff> findStaffEntities(final int maxResults, final int firstResult) {
+        return metrics.time("findStaffEntities(int,int)", () -> super.findStaffEntities(maxResults, firstResult));
+    }
+
+    @Override
+    public <T extends Staff> List<T> findStaffEntities(final Class<T> type) {
+        return metrics.time("findStaffEntities(Class)", () -> super.findStaffEntities(type));
+    }
+
+    @Override
+    public <T extends Staff> List<T> findStaffEntities(final Class<T> type, final int maxResults, final int firstResult) {
+        return metrics.time("findStaffEntities(Class,int,int)", () -> super.findStaffEntities(type, maxResults, firstResult));
+    }
+
+    @Override
+    public List<Staff> findStaffEntitiesBySnamePrefix(final String snamePrefix) {
+        return metrics.time("findStaffEntitiesBySnamePrefix(String)", () -> super.findStaffEntitiesBySnamePrefix(snamePrefix));
+    }
+
+    @Override
+    public List<Staff> findStaffEntitiesBySnamePrefix(final String snamePrefix, final int maxResults, final int firstResult) {
+        return metrics.time("findStaffEntitiesBySnamePrefix(String,int,int)", () -> super.findStaffEntitiesBySnamePrefix(snamePrefix, maxResults, firstResult));
+    }
+
+    @Override
+    public KeysetPage<Staff> findStaffEntitiesAfter(final Long lastId, final int maxResults) {
+        return metrics.time("findStaffEntitiesAfter", () -> super.findStaffEntitiesAfter(lastId, maxResults));
+    }
+
+    @Override
+    public <R> R scanStaffEntities(final Collector<? super Staff, ?, R> collector) {
+        return metrics.time("scanStaffEntities(Collector)", () -> super.scanStaffEntities(collector));
+    }
+
+    @Override
+    public <R> R scanStaffEntities(final Collector<? super Staff, ?, R> collector, final int parallelism) {
+        return metrics.time("scanStaffEntities(Collector,int)", () -> super.scanStaffEntities(collector, parallelism));
+    }
+
+    @Override
+    public <T extends Staff, R> R scanStaffEntities(final Class<T> type, final Collector<? super T, ?, R> collector) {
+        return metrics.time("scanStaffEntities(Class,Collector)", () -> super.scanStaffEntities(type, collector));
+    }
+
+    @Override
+    public <T extends Staff, R> R scanStaffEntities(final Class<T> type, final Collector<? super T, ?, R> collector, final int parallelism) {
+        return metrics.time("scanStaffEntities(Class,Collector,int)", () -> super.scanStaffEntities(type, collector, parallelism));
+    }
+
+    @Override
+    public List<Optional<Staff>> findStaffMembers(final Collection<Long> ids) {
+        return metrics.time("findStaffMembers", () -> super.findStaffMembers(ids));
+    }
+
+    @Override
+    public Staff findStaff(final Long id) {
+        return metrics.time("findStaff(Long)", () -> super.findStaff(id));
+    }
+
+    @Override
+    public Staff findStaff(final Long id, final CacheMode mode) {
+        return metrics.time("findStaff(Long,CacheMode)", () -> super.findStaff(id, mode));
+    }
+
+    @Override
+    public int getStaffCount() {
+        return metrics.time("getStaffCount()", () -> super.getStaffCount());
+    }
+
+    @Override
+    public <T extends Staff> int getStaffCount(final Class<T> type) {
+        return metrics.time("getStaffCount(Class)", () -> super.getStaffCount(type));
+    }
+
+    @Override
+    public Map<Class<? extends Staff>, Long> countByType() {
+        return metrics.time("countByType", () -> super.countByType());
+    }
+}
@@ -25,26 +25,59 @@
  */
 package george.singletablestrategy.service;
 
+import george.common.CacheMode;
+import george.common.EntityCursors;
+import george.common.EntityLookups;
+import george.common.KeysetPage;
+import george.common.ParallelScan;
+import george.common.Patch;
+import george.common.ResultCache;
+import george.common.ResultCache.Reads;
 import george.singletablestrategy.NonTeachingStaff;
 import george.singletablestrategy.Staff;
+import george.singletablestrategy.Staff_;
 import george.singletablestrategy.TeachingStaff;
 import george.singletablestrategy.service.exceptions.NonexistentEntityException;
+import george.singletablestrategy.service.exceptions.StaleEntityException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.Persistence;
+import javax.persistence.RollbackException;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
 
 /**
  *
  * @author George Shumakov <george.shumakov@gmail.com>
  */
 public class StaffJpaController implements Serializable {
-    
+
+    /**
+     * The entity classes of the hierarchy; each one has its own discriminator
+     * value in the STAFF table.
+     */
+    private static final List<Class<? extends Staff>> CONCRETE_TYPES = Collections.unmodifiableList(
+            Arrays.<Class<? extends Staff>>asList(Staff.class, TeachingStaff.class, NonTeachingStaff.class));
+
     public static void main(String[] args) {
         EntityManagerFactory emfactory = Persistence.createEntityManagerFactory("TablePerClassStrategyJPA");
         StaffJpaController ctrl = new StaffJpaController(emfactory);
@@ -65,12 +98,46 @@ public class StaffJpaController implements Serializable {
     public StaffJpaController(EntityManagerFactory emf) {
         this.emf = emf;
     }
+
+    public StaffJpaController(EntityManagerFactory emf, ResultCache resultCache) {
+        this.emf = emf;
+        this.resultCache = resultCache;
+    }
     private EntityManagerFactory emf = null;
+    private ResultCache resultCache = null;
 
     public EntityManager getEntityManager() {
         return emf.createEntityManager();
     }
 
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    private <T> T cached(String key, Class<? extends Staff> type, Reads reads, Supplier<T> loader) {
+        return resultCache == null ? loader.get() : resultCache.get(key, type, reads, loader);
+    }
+
+    private <T extends Staff> List<T> cachedList(String key, Class<? extends Staff> type, Reads reads,
+            Supplier<List<T>> loader) {
+        if (resultCache == null) {
+            return loader.get();
+        }
+        return resultCache.getEntities(key, emf, type, reads, loader);
+    }
+
+    private void rowsChanged(Class<?> type) {
+        if (resultCache != null) {
+            resultCache.rowsChanged(type);
+        }
+    }
+
+    private void valuesChanged(Class<?> type) {
+        if (resultCache != null) {
+            resultCache.valuesChanged(type);
+        }
+    }
+
     public void create(Staff staff) {
         EntityManager em = null;
         try {
@@ -82,32 +149,65 @@ public class StaffJpaController implements Serializable {
             if (em != null) {
                 em.close();
             }
+            rowsChanged(staff.getClass());
         }
     }
 
-    public void edit(Staff staff) throws NonexistentEntityException, Exception {
+    /**
+     * Merges {@code staff} with a version-checked UPDATE. Throws
+     * StaleEntityException when the staff was changed or removed since
+     * {@code staff} was read.
+     */
+    public void edit(Staff staff) throws StaleEntityException, Exception {
         EntityManager em = null;
         try {
             em = getEntityManager();
             em.getTransaction().begin();
             staff = em.merge(staff);
             em.getTransaction().commit();
-        } catch (Exception ex) {
-            String msg = ex.getLocalizedMessage();
-            if (msg == null || msg.length() == 0) {
-                Long id = staff.getId();
-                if (findStaff(id) == null) {
-                    throw new NonexistentEntityException("The staff with id " + id + " no longer exists.");
-                }
+        } catch (OptimisticLockException ex) {
+            throw stale(staff.getId(), ex);
+        } catch (RollbackException ex) {
+            if (ex.getCause() instanceof OptimisticLockException) {
+                throw stale(staff.getId(), ex.getCause());
             }
             throw ex;
         } finally {
             if (em != null) {
                 em.close();
             }
+            valuesChanged(staff.getClass());
+        }
+    }
+
+    /**
+     * Writes the attributes in {@code patch} to the staff with id {@code id}
+     * with one UPDATE, without loading the staff first. Returns false when
+     * there is no such staff.
+     */
+    public boolean patchStaff(Long id, Patch<Staff> patch) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            Query q = patch.toQuery(em, Staff.class, id);
+            q.setHint(QueryHints.BATCH_WRITING, HintValues.FALSE);
+            em.getTransaction().begin();
+            int rows = q.executeUpdate();
+            em.getTransaction().commit();
+            emf.getCache().evict(Staff.class, id);
+            return rows == 1;
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+            valuesChanged(Staff.class);
         }
     }
 
+    private static StaleEntityException stale(Long id, Throwable cause) {
+        return new StaleEntityException("The staff with id " + id + " was changed or removed since it was read.", cause);
+    }
+
     public void destroy(Long id) throws NonexistentEntityException {
         EntityManager em = null;
         try {
@@ -126,15 +226,153 @@ public class StaffJpaController implements Serializable {
             if (em != null) {
                 em.close();
             }
+            rowsChanged(Staff.class);
         }
     }
 
     public List<Staff> findStaffEntities() {
-        return findStaffEntities(true, -1, -1);
+        return cachedList("findStaffEntities", Staff.class, Reads.ROWS, () -> findStaffEntities(true, -1, -1));
     }
 
     public List<Staff> findStaffEntities(int maxResults, int firstResult) {
-        return findStaffEntities(false, maxResults, firstResult);
+        return cachedList("findStaffEntities:" + maxResults + ":" + firstResult, Staff.class, Reads.ROWS,
+                () -> findStaffEntities(false, maxResults, firstResult));
+    }
+
+    /**
+     * Staff members of {@code type} and its subclasses only. The query is
+     * restricted on the discriminator column, so the STAFF_TYPE_IDX index
+     * lets it skip the rows of the other types.
+     */
+    public <T extends Staff> List<T> findStaffEntities(Class<T> type) {
+        return cachedList("findStaffEntities:" + type.getName(), type, Reads.ROWS,
+                () -> findStaffEntities(type, true, -1, -1));
+    }
+
+    public <T extends Staff> List<T> findStaffEntities(Class<T> type, int maxResults, int firstResult) {
+        return cachedList("findStaffEntities:" + type.getName() + ":" + maxResults + ":" + firstResult, type,
+                Reads.ROWS,
+                () -> findStaffEntities(type, false, maxResults, firstResult));
+    }
+
+    private <T extends Staff> List<T> findStaffEntities(Class<T> type, boolean all, int maxResults,
+            int firstResult) {
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaQuery<T> cq = em.getCriteriaBuilder().createQuery(type);
+            cq.select(cq.from(type));
+            TypedQuery<T> q = em.createQuery(cq);
+            if (!all) {
+                q.setMaxResults(maxResults);
+                q.setFirstResult(firstResult);
+            }
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Staff members whose sname starts with {@code snamePrefix}; LIKE
+     * wildcards in the prefix match literally. The SNAME index declared on
+     * {@link Staff} turns this into a range scan instead of a table scan.
+     */
+    public List<Staff> findStaffEntitiesBySnamePrefix(String snamePrefix) {
+        return cachedList("findStaffEntitiesBySnamePrefix:" + snamePrefix, Staff.class, Reads.VALUES,
+                () -> findStaffEntitiesBySnamePrefix(snamePrefix, true, -1, -1));
+    }
+
+    public List<Staff> findStaffEntitiesBySnamePrefix(String snamePrefix, int maxResults, int firstResult) {
+        return cachedList(
+                "findStaffEntitiesBySnamePrefix:" + snamePrefix + ":" + maxResults + ":" + firstResult,
+                Staff.class, Reads.VALUES,
+                () -> findStaffEntitiesBySnamePrefix(snamePrefix, false, maxResults, firstResult));
+    }
+
+    private List<Staff> findStaffEntitiesBySnamePrefix(String snamePrefix, boolean all, int maxResults,
+            int firstResult) {
+        String pattern = snamePrefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Staff> cq = cb.createQuery(Staff.class);
+            Root<Staff> rt = cq.from(Staff.class);
+            cq.select(rt).where(cb.like(rt.get(Staff_.sname), pattern, '\\'));
+            TypedQuery<Staff> q = em.createQuery(cq);
+            if (!all) {
+                q.setMaxResults(maxResults);
+                q.setFirstResult(firstResult);
+            }
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Keyset pagination: returns up to {@code maxResults} staff members with an id
+     * greater than {@code lastId}, in id order. Unlike
+     * {@link #findStaffEntities(int, int)} the cost does not grow with the page
+     * depth, because the primary key index is used to seek to the first row.
+     * Pass {@code null} for the first page.
+     */
+    public KeysetPage<Staff> findStaffEntitiesAfter(Long lastId, int maxResults) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maxResults must be positive: " + maxResults);
+        }
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Staff> cq = cb.createQuery(Staff.class);
+            Root<Staff> rt = cq.from(Staff.class);
+            if (lastId != null) {
+                cq.where(cb.greaterThan(rt.get(Staff_.id), lastId));
+            }
+            cq.select(rt).orderBy(cb.asc(rt.get(Staff_.id)));
+            TypedQuery<Staff> q = em.createQuery(cq);
+            q.setMaxResults(maxResults + 1);
+            List<Staff> staff = q.getResultList();
+            if (staff.size() > maxResults) {
+                staff = new ArrayList<>(staff.subList(0, maxResults));
+                return new KeysetPage<>(staff, staff.get(maxResults - 1).getId());
+            }
+            return new KeysetPage<>(staff, null);
+        } finally {
+            em.close();
+        }
+    }
+
+    public Stream<Staff> streamStaffEntities() {
+        return streamStaffEntities(EntityCursors.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Streams every staff member through a database cursor reading
+     * {@code fetchSize} rows at a time, in constant memory. The stream holds
+     * an EntityManager and a connection until it is closed, so use it in a
+     * try-with-resources block.
+     */
+    public Stream<Staff> streamStaffEntities(int fetchSize) {
+        EntityManager em = getEntityManager();
+        CriteriaQuery<Staff> cq = em.getCriteriaBuilder().createQuery(Staff.class);
+        cq.select(cq.from(Staff.class));
+        return EntityCursors.stream(em, em.createQuery(cq), fetchSize);
+    }
+
+    public <T extends Staff> Stream<T> streamStaffEntities(Class<T> type) {
+        return streamStaffEntities(type, EntityCursors.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Streams the staff members of {@code type} and its subclasses through a
+     * database cursor restricted on the discriminator column; see
+     * {@link #streamStaffEntities(int)}.
+     */
+    public <T extends Staff> Stream<T> streamStaffEntities(Class<T> type, int fetchSize) {
+        EntityManager em = getEntityManager();
+        CriteriaQuery<T> cq = em.getCriteriaBuilder().createQuery(type);
+        cq.select(cq.from(type));
+        return EntityCursors.stream(em, em.createQuery(cq), fetchSize);
     }
 
     private List<Staff> findStaffEntities(boolean all, int maxResults, int firstResult) {
@@ -153,16 +391,132 @@ public class StaffJpaController implements Serializable {
         }
     }
 
+    public <R> R scanStaffEntities(Collector<? super Staff, ?, R> collector) {
+        List<Class<? extends Staff>> types = Collections.singletonList(Staff.class);
+        return scan(types, collector, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parallel full scan: splits the id space into ranges and reads each
+     * range through its own EntityManager and cursor on one of
+     * {@code parallelism} fork-join workers, feeding every staff member to
+     * {@code collector}, e.g. {@code Collectors.counting()} or
+     * {@code Collectors.groupingBy(...)}. Each worker holds a connection, so
+     * keep {@code parallelism} within the connection pool.
+     */
+    public <R> R scanStaffEntities(Collector<? super Staff, ?, R> collector, int parallelism) {
+        List<Class<? extends Staff>> types = Collections.singletonList(Staff.class);
+        return scan(types, collector, parallelism);
+    }
+
+    public <T extends Staff, R> R scanStaffEntities(Class<T> type, Collector<? super T, ?, R> collector) {
+        List<Class<? extends T>> types = Collections.singletonList(type);
+        return scan(types, collector, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parallel scan of the staff members of {@code type} and its subclasses
+     * only: the id bounds and every range query are restricted on the
+     * discriminator column. See {@link #scanStaffEntities(Collector, int)}.
+     */
+    public <T extends Staff, R> R scanStaffEntities(Class<T> type, Collector<? super T, ?, R> collector,
+            int parallelism) {
+        List<Class<? extends T>> types = Collections.singletonList(type);
+        return scan(types, collector, parallelism);
+    }
+
+    private <T, R> R scan(List<Class<? extends T>> types, Collector<? super T, ?, R> collector, int parallelism) {
+        return ParallelScan.scan(emf, types, Staff_.id.getName(), collector, parallelism,
+                EntityCursors.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Multi-get: looks up every id in {@code ids} through one EntityManager
+     * and bounded IN-list queries. The result keeps the order of {@code ids};
+     * an empty Optional marks an id with no staff member.
+     */
+    public List<Optional<Staff>> findStaffMembers(Collection<Long> ids) {
+        EntityManager em = getEntityManager();
+        try {
+            return EntityLookups.findAll(em, Staff.class, Staff_.id, Staff::getId, ids);
+        } finally {
+            em.close();
+        }
+    }
+
     public Staff findStaff(Long id) {
+        return findStaff(id, CacheMode.USE.hints());
+    }
+
+    /**
+     * Looks up one staff member and uses the shared cache as {@code mode} says:
+     * {@link CacheMode#BYPASS} reads the row without touching the cache and
+     * {@link CacheMode#REFRESH} also replaces the cached copy with it.
+     */
+    public Staff findStaff(Long id, CacheMode mode) {
+        return findStaff(id, mode.hints());
+    }
+
+    private Staff findStaff(Long id, Map<String, Object> hints) {
         EntityManager em = getEntityManager();
         try {
-            return em.find(Staff.class, id);
+            return em.find(Staff.class, id, hints);
         } finally {
             em.close();
         }
     }
 
     public int getStaffCount() {
+        return cached("getStaffCount", Staff.class, Reads.ROWS, this::countStaff);
+    }
+
+    public <T extends Staff> int getStaffCount(Class<T> type) {
+        return cached("getStaffCount:" + type.getName(), type, Reads.ROWS, () -> countStaff(type));
+    }
+
+    /**
+     * The number of staff members of every entity class in the hierarchy,
+     * counted in one GROUP BY query on the discriminator column; a class
+     * without rows maps to 0. Unlike {@link #getStaffCount(Class)} a class
+     * counts its own rows only, not those of its subclasses.
+     */
+    public Map<Class<? extends Staff>, Long> countByType() {
+        return cached("countByType", Staff.class, Reads.ROWS, this::countByDiscriminator);
+    }
+
+    private Map<Class<? extends Staff>, Long> countByDiscriminator() {
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Object[]> cq = cb.createQuery(Object[].class);
+            Root<Staff> rt = cq.from(Staff.class);
+            cq.multiselect(rt.type(), cb.count(rt)).groupBy(rt.type());
+            Map<Class<? extends Staff>, Long> counts = new LinkedHashMap<>();
+            for (Class<? extends Staff> type : CONCRETE_TYPES) {
+                counts.put(type, 0L);
+            }
+            for (Object[] row : em.createQuery(cq).getResultList()) {
+                counts.put(((Class<?>) row[0]).asSubclass(Staff.class), (Long) row[1]);
+            }
+            return Collections.unmodifiableMap(counts);
+        } finally {
+            em.close();
+        }
+    }
+
+    private <T extends Staff> int countStaff(Class<T> type) {
+        EntityManager em = getEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+            cq.select(cb.count(cq.from(type)));
+            return em.createQuery(cq).getSingleResult().intValue();
+        } finally {
+            em.close();
+        }
+    }
+
+    private int countStaff() {
         EntityManager em = getEntityManager();
         try {
             CriteriaQuery cq = em.getCriteriaBuilder().createQuery();
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.singletablestrategy.service;
+
+import george.common.QueryPlans;
+import george.singletablestrategy.NonTeachingStaff;
+import george.singletablestrategy.Staff;
+import george.singletablestrategy.TeachingStaff;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Checks with Derby's runtime statistics that the staff finders read through
+ * the indexes declared on {@link Staff}.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class StaffJpaControllerTest {
+
+    private static final int TEACHING = 200;
+    private static final int NON_TEACHING = 10;
+
+    private static EntityManagerFactory emf;
+
+    @BeforeClass
+    public static void createStaff() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+        properties.put("javax.persistence.jdbc.url", "jdbc:derby:memory:StaffJpaControllerTest;create=true");
+        emf = Persistence.createEntityManagerFactory("SingleTableStrategyJPA", properties);
+        StaffJpaController controller = new StaffJpaController(emf);
+        for (int i = 0; i < TEACHING + NON_TEACHING; i++) {
+            controller.create(i < TEACHING
+                    ? new TeachingStaff(null, "Staff " + i, "MSc", "Maths")
+                    : new NonTeachingStaff(null, "Staff " + i, "Accounts"));
+        }
+    }
+
+    @AfterClass
+    public static void close() {
+        emf.close();
+    }
+
+    @Test
+    public void findBySnamePrefixReadsTheSnameIndex() {
+        assertThat(indexesUsedBy(finder -> assertEquals(11,
+                finder.findStaffEntitiesBySnamePrefix("Staff 12").size())), hasItem("STAFF_SNAME_IDX"));
+    }
+
+    @Test
+    public void findByTypeReadsTheTypeIndex() {
+        assertThat(indexesUsedBy(finder -> assertEquals(NON_TEACHING,
+                finder.findStaffEntities(NonTeachingStaff.class).size())), hasItem("STAFF_TYPE_IDX"));
+    }
+
+    private static Iterable<String> indexesUsedBy(Consumer<StaffJpaController> finder) {
+        try (QueryPlans plans = QueryPlans.record(emf)) {
+            finder.accept(new StaffJpaController(emf) {
+                @Override
+                public EntityManager getEntityManager() {
+                    return plans.entityManager();
+                }
+            });
+            return plans.indexes();
+        }
+    }
+}
@@ -26,6 +26,7 @@
 package george.tableperclassstrategy.entity;
 
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.Table;
 
 /**
@@ -33,7 +34,8 @@ import javax.persistence.Table;
  * @author George Shumakov <george.shumakov@gmail.com>
  */
 @Entity
-@Table(name = "NonTeachingStaffTPC")
+@Table(name = "NonTeachingStaffTPC",
+        indexes = @Index(name = "NONTEACHINGSTAFFTPC_SNAME_IDX", columnList = "SNAME"))
 public class NonTeachingStaff extends Staff {
 
     private String areaexpertise;
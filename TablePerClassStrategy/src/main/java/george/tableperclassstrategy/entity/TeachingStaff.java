@@ -26,6 +26,7 @@
 package george.tableperclassstrategy.entity;
 
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.Table;
 
 /**
@@ -33,7 +34,8 @@ import javax.persistence.Table;
  * @author George Shumakov <george.shumakov@gmail.com>
  */
 @Entity
-@Table (name="TeachingStaffTPC")
+@Table(name = "TeachingStaffTPC",
+        indexes = @Index(name = "TEACHINGSTAFFTPC_SNAME_IDX", columnList = "SNAME"))
 public class TeachingStaff extends Staff {
 
     private String qualification;
@@ -25,25 +25,70 @@
  */
 package george.tableperclassstrategy.service;
 
+import george.common.CacheMode;
+import george.common.EntityCursors;
+import george.common.EntityLookups;
+import george.common.KeysetPage;
+import george.common.ParallelScan;
+import george.common.Patch;
+import george.common.ResultCache;
+import george.common.ResultCache.Reads;
 import george.tableperclassstrategy.entity.NonTeachingStaff;
 import george.tableperclassstrategy.entity.Staff;
+import george.tableperclassstrategy.entity.Staff_;
 import george.tableperclassstrategy.entity.TeachingStaff;
 import george.tableperclassstrategy.service.exceptions.NonexistentEntityException;
+import george.tableperclassstrategy.service.exceptions.StaleEntityException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.Persistence;
+import javax.persistence.RollbackException;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
 
 /**
  *
  * @author George Shumakov <george.shumakov@gmail.com>
  */
-public class StaffJpaController implements Serializable {
+public class StaffJpaController implements Serializable, AutoCloseable {
+
+    /**
+     * The concrete classes, each with a table of its own. A list query on
+     * {@link Staff} sends one SELECT to each of the three tables, but a COUNT
+     * or a cursor on {@link Staff} reads StaffTPC only, so counts and cursors
+     * go over these types one table at a time. A query on a subclass reads
+     * its own table only.
+     */
+    private static final List<Class<? extends Staff>> CONCRETE_TYPES = Collections.unmodifiableList(
+            Arrays.<Class<? extends Staff>>asList(Staff.class, TeachingStaff.class, NonTeachingStaff.class));
+
+    private static final AtomicInteger COUNT_POOLS = new AtomicInteger();
 
     public static void main(String[] args) {
         EntityManagerFactory emfactory = Persistence.createEntityManagerFactory("TablePerClassStrategyJPA");
@@ -65,12 +110,74 @@ public class StaffJpaController implements Serializable {
     public StaffJpaController(EntityManagerFactory emf) {
         this.emf = emf;
     }
+
+    public StaffJpaController(EntityManagerFactory emf, ResultCache resultCache) {
+        this.emf = emf;
+        this.resultCache = resultCache;
+    }
     private EntityManagerFactory emf = null;
+    private ResultCache resultCache = null;
+    private final transient ExecutorService countExecutor = newCountExecutor();
+
+    /**
+     * Threads for the tables counted besides the one the caller counts
+     * itself; they stop after a minute without work.
+     */
+    private static ExecutorService newCountExecutor() {
+        final String prefix = "staff-count-" + COUNT_POOLS.incrementAndGet() + "-";
+        final AtomicInteger count = new AtomicInteger();
+        int threads = CONCRETE_TYPES.size() - 1;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), (task) -> {
+                    Thread thread = new Thread(task, prefix + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Stops the threads of the parallel count; {@link #getStaffCount()}
+     * cannot be called afterwards.
+     */
+    @Override
+    public void close() {
+        countExecutor.shutdown();
+    }
 
     public EntityManager getEntityManager() {
         return emf.createEntityManager();
     }
 
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    private <T> T cached(String key, Class<? extends Staff> type, Reads reads, Supplier<T> loader) {
+        return resultCache == null ? loader.get() : resultCache.get(key, type, reads, loader);
+    }
+
+    private <T extends Staff> List<T> cachedList(String key, Class<? extends Staff> type, Reads reads,
+            Supplier<List<T>> loader) {
+        if (resultCache == null) {
+            return loader.get();
+        }
+        return resultCache.getEntities(key, emf, type, reads, loader);
+    }
+
+    private void rowsChanged(Class<?> type) {
+        if (resultCache != null) {
+            resultCache.rowsChanged(type);
+        }
+    }
+
+    private void valuesChanged(Class<?> type) {
+        if (resultCache != null) {
+            resultCache.valuesChanged(type);
+        }
+    }
+
     public void create(Staff staff) {
         EntityManager em = null;
         try {
@@ -82,32 +189,69 @@ public class StaffJpaController implements Serializable {
             if (em != null) {
                 em.close();
             }
+            rowsChanged(staff.getClass());
         }
     }
 
-    public void edit(Staff staff) throws NonexistentEntityException, Exception {
+    /**
+     * Merges {@code staff} with a version-checked UPDATE. Throws
+     * StaleEntityException when the staff was changed or removed since
+     * {@code staff} was read.
+     */
+    public void edit(Staff staff) throws StaleEntityException, Exception {
         EntityManager em = null;
         try {
             em = getEntityManager();
             em.getTransaction().begin();
             staff = em.merge(staff);
             em.getTransaction().commit();
-        } catch (Exception ex) {
-            String msg = ex.getLocalizedMessage();
-            if (msg == null || msg.length() == 0) {
-                Long id = staff.getId();
-                if (findStaff(id) == null) {
-                    throw new NonexistentEntityException("The staff with id " + id + " no longer exists.");
-                }
+        } catch (OptimisticLockException ex) {
+            throw stale(staff.getId(), ex);
+        } catch (RollbackException ex) {
+            if (ex.getCause() instanceof OptimisticLockException) {
+                throw stale(staff.getId(), ex.getCause());
             }
             throw ex;
         } finally {
             if (em != null) {
                 em.close();
             }
+            valuesChanged(staff.getClass());
+        }
+    }
+
+    /**
+     * Writes the attributes in {@code patch} to the staff with id {@code id}
+     * with one UPDATE, without loading the staff first. Returns false when
+     * there is no such staff. Every concrete class has its own table, which a
+     * bulk UPDATE of Staff would not reach, so each table gets its own UPDATE.
+     */
+    public boolean patchStaff(Long id, Patch<Staff> patch) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            em.getTransaction().begin();
+            int rows = 0;
+            for (Class<? extends Staff> type : CONCRETE_TYPES) {
+                Query q = patch.toQuery(em, type, id);
+                q.setHint(QueryHints.BATCH_WRITING, HintValues.FALSE);
+                rows += q.executeUpdate();
+            }
+            em.getTransaction().commit();
+            emf.getCache().evict(Staff.class, id);
+            return rows == 1;
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+            valuesChanged(Staff.class);
         }
     }
 
+    private static StaleEntityException stale(Long id, Throwable cause) {
+        return new StaleEntityException("The staff with id " + id + " was changed or removed since it was read.", cause);
+    }
+
     public void destroy(Long id) throws NonexistentEntityException {
         EntityManager em = null;
         try {
@@ -126,47 +270,318 @@ public class StaffJpaController implements Serializable {
             if (em != null) {
                 em.close();
             }
+            rowsChanged(Staff.class);
         }
     }
 
     public List<Staff> findStaffEntities() {
-        return findStaffEntities(true, -1, -1);
+        return cachedList("findStaffEntities", Staff.class, Reads.ROWS, () -> findStaffEntities(true, -1, -1));
     }
 
     public List<Staff> findStaffEntities(int maxResults, int firstResult) {
-        return findStaffEntities(false, maxResults, firstResult);
+        return cachedList("findStaffEntities:" + maxResults + ":" + firstResult, Staff.class, Reads.ROWS,
+                () -> findStaffEntities(false, maxResults, firstResult));
+    }
+
+    /**
+     * Staff members whose class is exactly one of {@code types}, read from
+     * the tables of those types only: {@code TeachingStaff.class} touches
+     * TeachingStaffTPC alone and {@code Staff.class} the plain staff members
+     * of StaffTPC, without the subclasses.
+     */
+    public List<Staff> findStaffEntities(Collection<Class<? extends Staff>> types) {
+        List<Class<? extends Staff>> tables = tablesOf(types);
+        return cachedList("findStaffEntities:" + tables, Staff.class, Reads.ROWS, () -> findStaffEntities(tables));
+    }
+
+    private List<Staff> findStaffEntities(List<Class<? extends Staff>> tables) {
+        List<Staff> staff = new ArrayList<>();
+        for (Class<? extends Staff> type : tables) {
+            try (Stream<Staff> rows = streamTable(type, EntityCursors.DEFAULT_FETCH_SIZE)) {
+                rows.forEach(staff::add);
+            }
+        }
+        return staff;
+    }
+
+    /**
+     * Staff members whose sname starts with {@code snamePrefix}; LIKE
+     * wildcards in the prefix match literally. The SNAME index declared on
+     * {@link Staff} turns this into a range scan instead of a table scan.
+     *
+     * Each concrete table carries its own SNAME index, so every SELECT of
+     * the polymorphic query is an index lookup.
+     */
+    public List<Staff> findStaffEntitiesBySnamePrefix(String snamePrefix) {
+        return cachedList("findStaffEntitiesBySnamePrefix:" + snamePrefix, Staff.class, Reads.VALUES,
+                () -> findStaffEntitiesBySnamePrefix(snamePrefix, true, -1, -1));
+    }
+
+    public List<Staff> findStaffEntitiesBySnamePrefix(String snamePrefix, int maxResults, int firstResult) {
+        return cachedList(
+                "findStaffEntitiesBySnamePrefix:" + snamePrefix + ":" + maxResults + ":" + firstResult,
+                Staff.class, Reads.VALUES,
+                () -> findStaffEntitiesBySnamePrefix(snamePrefix, false, maxResults, firstResult));
+    }
+
+    private List<Staff> findStaffEntitiesBySnamePrefix(String snamePrefix, boolean all, int maxResults,
+            int firstResult) {
+        String pattern = snamePrefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return page(all, maxResults, firstResult, (cb, rt) -> cb.like(rt.get(Staff_.sname), pattern, '\\'));
+    }
+
+    /**
+     * Keyset pagination: returns up to {@code maxResults} staff members with an id
+     * greater than {@code lastId}, in id order. Unlike
+     * {@link #findStaffEntities(int, int)} the cost does not grow with the page
+     * depth, because the primary key index is used to seek to the first row.
+     * Pass {@code null} for the first page.
+     */
+    public KeysetPage<Staff> findStaffEntitiesAfter(Long lastId, int maxResults) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maxResults must be positive: " + maxResults);
+        }
+        List<Staff> staff = seekStaff(lastId == null ? null : (cb, rt) -> cb.greaterThan(rt.get(Staff_.id), lastId),
+                maxResults + 1);
+        if (staff.size() > maxResults) {
+            staff = new ArrayList<>(staff.subList(0, maxResults));
+            return new KeysetPage<>(staff, staff.get(maxResults - 1).getId());
+        }
+        return new KeysetPage<>(staff, null);
+    }
+
+    public Stream<Staff> streamStaffEntities() {
+        return streamStaffEntities(EntityCursors.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Streams every staff member through a database cursor reading
+     * {@code fetchSize} rows at a time, in constant memory. The stream holds
+     * an EntityManager and a connection until it is closed, so use it in a
+     * try-with-resources block.
+     *
+     * An EclipseLink cursor over a TABLE_PER_CLASS root reads the root table
+     * only, so one cursor is opened per concrete table, one after the other.
+     */
+    public Stream<Staff> streamStaffEntities(int fetchSize) {
+        List<Supplier<Stream<Staff>>> tables = new ArrayList<>();
+        for (Class<? extends Staff> type : CONCRETE_TYPES) {
+            tables.add(() -> streamTable(type, fetchSize));
+        }
+        return EntityCursors.concat(tables);
+    }
+
+    private Stream<Staff> streamTable(Class<? extends Staff> type, int fetchSize) {
+        EntityManager em = getEntityManager();
+        CriteriaQuery<Staff> cq = em.getCriteriaBuilder().createQuery(Staff.class);
+        cq.select(cq.from(type));
+        return EntityCursors.stream(em, em.createQuery(cq), fetchSize);
     }
 
     private List<Staff> findStaffEntities(boolean all, int maxResults, int firstResult) {
+        return page(all, maxResults, firstResult, null);
+    }
+
+    private List<Staff> page(boolean all, int maxResults, int firstResult, StaffFilter filter) {
+        if (all) {
+            return seekStaff(filter, -1);
+        }
+        if (maxResults < 0 || firstResult < 0) {
+            throw new IllegalArgumentException("maxResults and firstResult must not be negative: "
+                    + maxResults + ", " + firstResult);
+        }
+        List<Staff> staff = seekStaff(filter, firstResult + maxResults);
+        return staff.size() <= firstResult ? new ArrayList<>()
+                : new ArrayList<>(staff.subList(firstResult, staff.size()));
+    }
+
+    /**
+     * Reads the staff members matching {@code filter} ({@code null} for all)
+     * in id order, at most {@code limit} of them ({@code -1} for no limit).
+     * <p>
+     * Seek and merge: EclipseLink runs a TABLE_PER_CLASS query as one SELECT
+     * per table and applies ORDER BY and the row limit to each SELECT on its
+     * own, so their rows would not come back in id order across the tables.
+     * Instead every concrete table is read on its own, in id order and up to
+     * {@code limit} rows, and the three id-ordered lists are merged here
+     * until {@code limit} staff members are taken. A page therefore reads up
+     * to three times {@code limit} rows, and without a limit, as for
+     * {@link #findStaffEntities()}, every table is read whole and held in
+     * memory.
+     */
+    private List<Staff> seekStaff(StaffFilter filter, int limit) {
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+        List<List<Staff>> tables = new ArrayList<>();
+        for (Class<? extends Staff> type : CONCRETE_TYPES) {
+            List<Staff> staff = new ArrayList<>();
+            EntityManager em = getEntityManager();
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Staff> cq = cb.createQuery(Staff.class);
+            Root<? extends Staff> rt = cq.from(type);
+            if (filter != null) {
+                cq.where(filter.apply(cb, rt));
+            }
+            cq.select(rt).orderBy(cb.asc(rt.get(Staff_.id)));
+            TypedQuery<Staff> q = em.createQuery(cq);
+            int fetchSize = EntityCursors.DEFAULT_FETCH_SIZE;
+            if (limit > 0) {
+                q.setMaxResults(limit);
+                fetchSize = Math.min(limit, fetchSize);
+            }
+            try (Stream<Staff> rows = EntityCursors.stream(em, q, fetchSize)) {
+                rows.forEach(staff::add);
+            }
+            tables.add(staff);
+        }
+        return merge(tables, limit);
+    }
+
+    /**
+     * Merges lists in id order into one in id order, of at most
+     * {@code limit} elements ({@code -1} for no limit).
+     */
+    private static List<Staff> merge(List<List<Staff>> tables, int limit) {
+        int[] next = new int[tables.size()];
+        List<Staff> merged = new ArrayList<>();
+        while (limit < 0 || merged.size() < limit) {
+            int first = -1;
+            for (int t = 0; t < tables.size(); t++) {
+                if (next[t] < tables.get(t).size() && (first < 0
+                        || tables.get(t).get(next[t]).getId() < tables.get(first).get(next[first]).getId())) {
+                    first = t;
+                }
+            }
+            if (first < 0) {
+                break;
+            }
+            merged.add(tables.get(first).get(next[first]++));
+        }
+        return merged;
+    }
+
+    /**
+     * A WHERE clause applied to each concrete table by {@link #seekStaff}.
+     */
+    private interface StaffFilter {
+
+        Predicate apply(CriteriaBuilder cb, Root<? extends Staff> rt);
+    }
+
+    public <R> R scanStaffEntities(Collector<? super Staff, ?, R> collector) {
+        return scan(CONCRETE_TYPES, collector, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parallel full scan: splits the id space into ranges and reads each
+     * range through its own EntityManager and cursor on one of
+     * {@code parallelism} fork-join workers, feeding every staff member to
+     * {@code collector}, e.g. {@code Collectors.counting()} or
+     * {@code Collectors.groupingBy(...)}. Each worker holds a connection, so
+     * keep {@code parallelism} within the connection pool. Every
+     * concrete class has its own table and is scanned over its own id range.
+     */
+    public <R> R scanStaffEntities(Collector<? super Staff, ?, R> collector, int parallelism) {
+        return scan(CONCRETE_TYPES, collector, parallelism);
+    }
+
+    private <T, R> R scan(List<Class<? extends T>> types, Collector<? super T, ?, R> collector, int parallelism) {
+        return ParallelScan.scan(emf, types, Staff_.id.getName(), collector, parallelism,
+                EntityCursors.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Multi-get: looks up every id in {@code ids} through one EntityManager
+     * and bounded IN-list queries. The result keeps the order of {@code ids};
+     * an empty Optional marks an id with no staff member.
+     */
+    public List<Optional<Staff>> findStaffMembers(Collection<Long> ids) {
         EntityManager em = getEntityManager();
         try {
-            CriteriaQuery cq = em.getCriteriaBuilder().createQuery();
-            cq.select(cq.from(Staff.class));
-            Query q = em.createQuery(cq);
-            if (!all) {
-                q.setMaxResults(maxResults);
-                q.setFirstResult(firstResult);
-            }
-            return q.getResultList();
+            return EntityLookups.findAll(em, Staff.class, Staff_.id, Staff::getId, ids);
         } finally {
             em.close();
         }
     }
 
     public Staff findStaff(Long id) {
+        return findStaff(id, CacheMode.USE.hints());
+    }
+
+    /**
+     * Looks up one staff member and uses the shared cache as {@code mode} says:
+     * {@link CacheMode#BYPASS} reads the row without touching the cache and
+     * {@link CacheMode#REFRESH} also replaces the cached copy with it.
+     */
+    public Staff findStaff(Long id, CacheMode mode) {
+        return findStaff(id, mode.hints());
+    }
+
+    private Staff findStaff(Long id, Map<String, Object> hints) {
         EntityManager em = getEntityManager();
         try {
-            return em.find(Staff.class, id);
+            return em.find(Staff.class, id, hints);
         } finally {
             em.close();
         }
     }
 
+    /**
+     * Counts the staff members of all three tables. A COUNT on the root
+     * entity only reads StaffTPC, so every table is counted on its own
+     * connection, in parallel on the threads of this controller, and the
+     * counts are summed.
+     */
     public int getStaffCount() {
+        return cached("getStaffCount", Staff.class, Reads.ROWS, () -> countStaff(CONCRETE_TYPES));
+    }
+
+    /**
+     * Counts the staff members whose class is exactly one of {@code types},
+     * touching only the tables of those types.
+     */
+    public int getStaffCount(Collection<Class<? extends Staff>> types) {
+        List<Class<? extends Staff>> tables = tablesOf(types);
+        return cached("getStaffCount:" + tables, Staff.class, Reads.ROWS, () -> countStaff(tables));
+    }
+
+    private static List<Class<? extends Staff>> tablesOf(Collection<Class<? extends Staff>> types) {
+        for (Class<? extends Staff> type : types) {
+            if (!CONCRETE_TYPES.contains(type)) {
+                throw new IllegalArgumentException("Not a mapped staff class: " + type);
+            }
+        }
+        List<Class<? extends Staff>> tables = new ArrayList<>(CONCRETE_TYPES);
+        tables.retainAll(types);
+        return tables;
+    }
+
+    private int countStaff(List<Class<? extends Staff>> tables) {
+        List<CompletableFuture<Integer>> counts = new ArrayList<>();
+        for (int i = 1; i < tables.size(); i++) {
+            Class<? extends Staff> type = tables.get(i);
+            counts.add(CompletableFuture.supplyAsync(() -> countTable(type), countExecutor));
+        }
+        int total = tables.isEmpty() ? 0 : countTable(tables.get(0));
+        for (CompletableFuture<Integer> count : counts) {
+            try {
+                total += count.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return total;
+    }
+
+    private int countTable(Class<? extends Staff> type) {
         EntityManager em = getEntityManager();
         try {
             CriteriaQuery cq = em.getCriteriaBuilder().createQuery();
-            Root<Staff> rt = cq.from(Staff.class);
+            Root<? extends Staff> rt = cq.from(type);
             cq.select(em.getCriteriaBuilder().count(rt));
             Query q = em.createQuery(cq);
             return ((Long) q.getSingleResult()).intValue();
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.tableperclassstrategy.service;
+
+import george.common.KeysetPage;
+import george.common.QueryPlans;
+import george.tableperclassstrategy.entity.NonTeachingStaff;
+import george.tableperclassstrategy.entity.Staff;
+import george.tableperclassstrategy.entity.TeachingStaff;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks with Derby's runtime statistics that the staff finders read each
+ * table of the {@link Staff} hierarchy through the index declared on its
+ * entity, which tables the counts and the type-restricted finder read, that
+ * the pages merge the three tables in id order, and that the staff stream
+ * reads the tables one cursor at a time.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class StaffJpaControllerTest {
+
+    private static final int STAFF = 300;
+
+    private static EntityManagerFactory emf;
+
+    @BeforeClass
+    public static void createStaff() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+        properties.put("javax.persistence.jdbc.url", "jdbc:derby:memory:StaffJpaControllerTest;create=true");
+        emf = Persistence.createEntityManagerFactory("TablePerClassStrategyJPA", properties);
+        StaffJpaController controller = new StaffJpaController(emf);
+        for (int i = 0; i < STAFF; i++) {
+            String sname = "Staff " + i;
+            controller.create(i % 3 == 0 ? new Staff(null, sname)
+                    : i % 3 == 1 ? new TeachingStaff(null, sname, "MSc", "Maths")
+                    : new NonTeachingStaff(null, sname, "Accounts"));
+        }
+    }
+
+    @AfterClass
+    public static void close() {
+        emf.close();
+    }
+
+    @Test
+    public void findBySnamePrefixReadsTheSnameIndexOfEveryTable() {
+        assertThat(indexesUsedBy(finder -> assertEquals(11,
+                finder.findStaffEntitiesBySnamePrefix("Staff 12").size())),
+                hasItems("STAFFTPC_SNAME_IDX", "TEACHINGSTAFFTPC_SNAME_IDX", "NONTEACHINGSTAFFTPC_SNAME_IDX"));
+    }
+
+    @Test
+    public void staffCountReadsEveryTableOnce() {
+        assertEquals(names("STAFFTPC", "TEACHINGSTAFFTPC", "NONTEACHINGSTAFFTPC"),
+                tablesReadBy(controller -> assertEquals(STAFF, controller.getStaffCount())));
+    }
+
+    @Test
+    public void typeRestrictedCountReadsOnlyItsTables() {
+        assertEquals(names("TEACHINGSTAFFTPC"), tablesReadBy(controller -> assertEquals(STAFF / 3,
+                controller.getStaffCount(Collections.singletonList(TeachingStaff.class)))));
+        assertEquals(names("STAFFTPC", "NONTEACHINGSTAFFTPC"), tablesReadBy(controller -> assertEquals(2 * STAFF / 3,
+                controller.getStaffCount(Arrays.asList(Staff.class, NonTeachingStaff.class)))));
+    }
+
+    @Test
+    public void typeRestrictedFinderReadsOnlyItsTables() {
+        assertEquals(names("STAFFTPC"), tablesReadBy(controller -> {
+            List<Staff> staff = controller.findStaffEntities(Collections.singletonList(Staff.class));
+            assertEquals(STAFF / 3, staff.size());
+            for (Staff member : staff) {
+                assertEquals(Staff.class, member.getClass());
+            }
+        }));
+    }
+
+    @Test
+    public void keysetPagesMergeTheTablesInIdOrder() {
+        StaffJpaController controller = new StaffJpaController(emf);
+        List<Long> ids = new ArrayList<>();
+        KeysetPage<Staff> page = controller.findStaffEntitiesAfter(null, 7);
+        assertEquals(names("Staff", "TeachingStaff", "NonTeachingStaff"), classesOf(page.getEntities()));
+        while (true) {
+            for (Staff member : page.getEntities()) {
+                ids.add(member.getId());
+            }
+            if (!page.hasNext()) {
+                break;
+            }
+            page = controller.findStaffEntitiesAfter(page.getNextKey(), 7);
+        }
+        assertEquals(STAFF, ids.size());
+        assertEquals(idsOf(controller.findStaffEntities()), ids);
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i - 1) < ids.get(i));
+        }
+    }
+
+    @Test
+    public void offsetPagesAreSlicesOfTheMergedList() {
+        StaffJpaController controller = new StaffJpaController(emf);
+        List<Long> all = idsOf(controller.findStaffEntities());
+        assertEquals(all.subList(95, 105), idsOf(controller.findStaffEntities(10, 95)));
+        assertEquals(all.subList(STAFF - 4, STAFF), idsOf(controller.findStaffEntities(10, STAFF - 4)));
+        assertEquals(all.subList(0, 0), idsOf(controller.findStaffEntities(10, STAFF)));
+    }
+
+    @Test
+    public void streamReadsEveryTableOneCursorAtATime() {
+        AtomicInteger open = new AtomicInteger();
+        AtomicInteger maxOpen = new AtomicInteger();
+        AtomicInteger clears = new AtomicInteger();
+        StaffJpaController controller = new StaffJpaController(emf) {
+            @Override
+            public EntityManager getEntityManager() {
+                EntityManager em = super.getEntityManager();
+                maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+                return (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(),
+                        new Class<?>[]{EntityManager.class}, (proxy, method, args) -> {
+                            if (method.getName().equals("close")) {
+                                open.decrementAndGet();
+                            } else if (method.getName().equals("clear")) {
+                                clears.incrementAndGet();
+                            }
+                            try {
+                                return method.invoke(em, args);
+                            } catch (InvocationTargetException ex) {
+                                throw ex.getCause();
+                            }
+                        });
+            }
+        };
+        try (Stream<Staff> staff = controller.streamStaffEntities(10)) {
+            Iterator<Staff> rows = staff.iterator();
+            assertTrue(rows.hasNext());
+            rows.next();
+            assertEquals("rows read ahead of the first", 0, clears.get());
+        }
+        assertEquals(0, open.get());
+        try (Stream<Staff> staff = controller.streamStaffEntities(10)) {
+            assertEquals(STAFF, staff.count());
+        }
+        assertEquals(0, open.get());
+        assertEquals(1, maxOpen.get());
+    }
+
+    private static Set<String> tablesReadBy(Consumer<StaffJpaController> reads) {
+        try (QueryPlans plans = QueryPlans.record(emf);
+                StaffJpaController controller = new StaffJpaController(emf) {
+                    @Override
+                    public EntityManager getEntityManager() {
+                        return plans.entityManager();
+                    }
+                }) {
+            reads.accept(controller);
+            return plans.tables();
+        }
+    }
+
+    private static List<Long> idsOf(List<Staff> staff) {
+        List<Long> ids = new ArrayList<>();
+        for (Staff member : staff) {
+            ids.add(member.getId());
+        }
+        return ids;
+    }
+
+    private static Set<String> classesOf(List<Staff> staff) {
+        Set<String> classes = new HashSet<>();
+        for (Staff member : staff) {
+            classes.add(member.getClass().getSimpleName());
+        }
+        return classes;
+    }
+
+    private static Set<String> names(String... names) {
+        return new TreeSet<>(Arrays.asList(names));
+    }
+
+    private static Iterable<String> indexesUsedBy(Consumer<StaffJpaController> finder) {
+        try (QueryPlans plans = QueryPlans.record(emf)) {
+            finder.accept(new StaffJpaController(emf) {
+                @Override
+                public EntityManager getEntityManager() {
+                    return plans.entityManager();
+                }
+            });
+            return plans.indexes();
+        }
+    }
+}
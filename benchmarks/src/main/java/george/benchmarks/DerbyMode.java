@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.benchmarks;
+
+import java.net.InetAddress;
+import java.util.Map;
+import org.apache.derby.drda.NetworkServerControl;
+
+/**
+ * How a benchmark reaches its Derby database: through the network server
+ * (the same client driver the persistence units ship with) or in-process.
+ * Both modes use an in-memory database, so the only difference measured is
+ * the client/server round trip.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public enum DerbyMode {
+
+    CLIENT {
+        @Override
+        public Map<String, String> properties(String database) {
+            Map<String, String> props = EmbeddedDerby.properties(database);
+            props.put("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.ClientDriver");
+            props.put("javax.persistence.jdbc.url",
+                    "jdbc:derby://localhost:" + PORT + "/memory:" + database + ";create=true");
+            return props;
+        }
+
+        @Override
+        public void start() throws Exception {
+            server = new NetworkServerControl(InetAddress.getLoopbackAddress(), PORT);
+            server.start(null);
+            for (int attempt = 0;; attempt++) {
+                try {
+                    server.ping();
+                    return;
+                } catch (Exception ex) {
+                    if (attempt == 50) {
+                        throw ex;
+                    }
+                    Thread.sleep(100);
+                }
+            }
+        }
+
+        @Override
+        public void stop() throws Exception {
+            if (server != null) {
+                server.shutdown();
+                server = null;
+            }
+        }
+    },
+    EMBEDDED {
+        @Override
+        public Map<String, String> properties(String database) {
+            return EmbeddedDerby.properties(database);
+        }
+    };
+
+    /**
+     * Port of the in-process network server, next to the default 1527 so a
+     * running sample server is left alone.
+     */
+    public static final int PORT = 1528;
+
+    private static NetworkServerControl server;
+
+    public abstract Map<String, String> properties(String database);
+
+    public void start() throws Exception {
+    }
+
+    public void stop() throws Exception {
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.benchmarks;
+
+import george.criteriaapi.entity.Employee;
+import george.criteriaapi.service.EmployeeJpaController;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-operation latency of the CriteriaAPI EmployeeJpaController when Derby
+ * is reached through the network server versus loaded in-process, against
+ * {@code rows} pre-loaded employees. The shared cache is off for Employee,
+ * so every lookup goes to the database.
+ *
+ * Run with {@code java -jar benchmarks/target/benchmarks-1.0-SNAPSHOT.jar DerbyModeBenchmark}.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DerbyModeBenchmark {
+
+    private static final String DATABASE = "derbymode";
+    private static final String PERSISTENCE_UNIT = "CriteriaAPI";
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"CLIENT", "EMBEDDED"})
+    public DerbyMode mode;
+
+    @Param({"10000"})
+    public int rows;
+
+    private EntityManagerFactory emf;
+    private EmployeeJpaController employees;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mode.start();
+        Map<String, String> properties = mode.properties(DATABASE);
+        // Employee is @Cacheable, which cache.shared.default does not override
+        properties.put(PersistenceUnitProperties.CACHE_SHARED_ + "Employee", "false");
+        emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, properties);
+        employees = new EmployeeJpaController(emf);
+        List<Employee> load = new ArrayList<>(rows);
+        for (int n = 0; n < rows; n++) {
+            load.add(new Employee(null, "Name " + n, 1000 + n % 100, n % 2 == 0 ? "Technical Manager" : "Clerk"));
+        }
+        employees.bulkCreate(load, EmployeeJpaController.DEFAULT_BATCH_SIZE);
+        ids = new long[rows];
+        for (int n = 0; n < rows; n++) {
+            ids[n] = load.get(n).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (emf != null && emf.isOpen()) {
+            emf.close();
+        }
+        EmbeddedDerby.drop(DATABASE);
+        mode.stop();
+    }
+
+    @Benchmark
+    public Employee findEmployee() {
+        return employees.findEmployee(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public List<Employee> findEmployeePage() {
+        return employees.findEmployeeEntities(PAGE_SIZE, ThreadLocalRandom.current().nextInt(rows - PAGE_SIZE));
+    }
+
+    @Benchmark
+    public int getEmployeeCount() {
+        return employees.getEmployeeCount();
+    }
+
+    @Benchmark
+    public void createEmployee() {
+        employees.create(new Employee(null, "New", 1000, "Clerk"));
+    }
+}
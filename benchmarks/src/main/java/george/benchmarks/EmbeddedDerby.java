@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.benchmarks;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistence unit overrides that point a unit at an in-memory embedded Derby
+ * database instead of the network server configured in persistence.xml.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class EmbeddedDerby {
+
+    private static final String DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
+
+    private EmbeddedDerby() {
+    }
+
+    public static String url(String database) {
+        return "jdbc:derby:memory:" + database;
+    }
+
+    public static Map<String, String> properties(String database) {
+        Map<String, String> props = new HashMap<>();
+        props.put("javax.persistence.jdbc.driver", DRIVER);
+        props.put("javax.persistence.jdbc.url", url(database) + ";create=true");
+        props.put("javax.persistence.jdbc.user", "app");
+        props.put("javax.persistence.jdbc.password", "app");
+        props.put("javax.persistence.schema-generation.database.action", "drop-and-create");
+        props.put("eclipselink.logging.level", "WARNING");
+        return props;
+    }
+
+    public static void drop(String database) {
+        try {
+            DriverManager.getConnection(url(database) + ";drop=true").close();
+        } catch (SQLException ex) {
+            // Derby reports a successful drop with SQLState 08006
+            if (!"08006".equals(ex.getSQLState())) {
+                throw new IllegalStateException("Cannot drop database " + database, ex);
+            }
+        }
+    }
+}
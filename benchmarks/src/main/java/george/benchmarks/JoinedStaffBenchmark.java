@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.benchmarks;
+
+import george.joinedtablestrategy.entities.NonTeachingStaff;
+import george.joinedtablestrategy.entities.Staff;
+import george.joinedtablestrategy.entities.TeachingStaff;
+import george.joinedtablestrategy.services.StaffJpaController;
+import george.joinedtablestrategy.services.StaffSummary;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads of the JOINED Staff hierarchy: the polymorphic
+ * {@code findStaffEntities()}, which probes DTYPE and selects each subclass
+ * table, against one subtype only and against the STAFFJ-only projection.
+ * The database holds {@code rows} staff members, half teaching and half
+ * non-teaching.
+ *
+ * Run with {@code java -jar benchmarks/target/benchmarks-1.0-SNAPSHOT.jar JoinedStaffBenchmark}.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JoinedStaffBenchmark {
+
+    private static final String DATABASE = "joinedstaff";
+    private static final int LOAD_CHUNK = 1000;
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private EntityManagerFactory emf;
+    private StaffJpaController staff;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory(StaffStrategy.JOINED.getPersistenceUnit(),
+                EmbeddedDerby.properties(DATABASE));
+        staff = new StaffJpaController(emf);
+        load();
+    }
+
+    private void load() {
+        EntityManager em = staff.getEntityManager();
+        try {
+            for (int first = 0; first < rows; first += LOAD_CHUNK) {
+                em.getTransaction().begin();
+                for (int n = first; n < Math.min(first + LOAD_CHUNK, rows); n++) {
+                    Staff member = n % 2 == 0
+                            ? new TeachingStaff(null, "Teacher " + n, "MSc MEd", "Maths")
+                            : new NonTeachingStaff(null, "Clerk " + n, "Accounts");
+                    em.persist(member);
+                }
+                em.getTransaction().commit();
+                em.clear();
+            }
+        } finally {
+            em.close();
+        }
+        emf.getCache().evictAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (emf != null && emf.isOpen()) {
+            emf.close();
+        }
+        EmbeddedDerby.drop(DATABASE);
+    }
+
+    @Benchmark
+    public List<Staff> findStaffEntities() {
+        return staff.findStaffEntities();
+    }
+
+    @Benchmark
+    public List<TeachingStaff> findTeachingStaff() {
+        return staff.findStaffEntities(TeachingStaff.class);
+    }
+
+    @Benchmark
+    public List<StaffSummary> findStaffSummaries() {
+        return staff.findStaffSummaries();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.benchmarks;
+
+import george.common.SequenceCustomizer;
+import george.criteriaapi.entity.Employee;
+import george.criteriaapi.service.EmployeeJpaController;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Concurrent inserts through the CriteriaAPI EmployeeJpaController with
+ * different id allocation sizes. With a size of 1 every insert has to lock
+ * the EMPLOYEE_CAPI_SEQ row of the SEQUENCE table; larger blocks are handed
+ * out from memory.
+ *
+ * Run with {@code java -jar benchmarks/target/benchmarks-1.0-SNAPSHOT.jar SequenceContentionBenchmark}.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+public class SequenceContentionBenchmark {
+
+    private static final String DATABASE = "sequence";
+    private static final String PERSISTENCE_UNIT = "CriteriaAPI";
+    private static final String SEQUENCE = "EMPLOYEE_CAPI_SEQ";
+
+    @Param({"1", "50", "1000"})
+    public int allocationSize;
+
+    private EntityManagerFactory emf;
+    private EmployeeJpaController employees;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, String> props = EmbeddedDerby.properties(DATABASE);
+        props.put(SequenceCustomizer.allocationSizeProperty(SEQUENCE), Integer.toString(allocationSize));
+        emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, props);
+        employees = new EmployeeJpaController(emf);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (emf != null && emf.isOpen()) {
+            emf.close();
+        }
+        EmbeddedDerby.drop(DATABASE);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void create() {
+        employees.create(new Employee(null, "New", 1000, "Clerk"));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.benchmarks;
+
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * The three Staff hierarchies under comparison, each bound to its own
+ * persistence unit and StaffJpaController.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public enum StaffStrategy {
+
+    SINGLE_TABLE("SingleTableStrategyJPA") {
+        @Override
+        public StaffAccess open(EntityManagerFactory emf) {
+            final george.singletablestrategy.service.StaffJpaController ctrl
+                    = new george.singletablestrategy.service.StaffJpaController(emf);
+            return new StaffAccess() {
+                @Override
+                public EntityManager getEntityManager() {
+                    return ctrl.getEntityManager();
+                }
+
+                @Override
+                public Object newStaff(int n) {
+                    return n % 2 == 0
+                            ? new george.singletablestrategy.TeachingStaff(null, "Teacher " + n, "MSc MEd", "Maths")
+                            : new george.singletablestrategy.NonTeachingStaff(null, "Clerk " + n, "Accounts");
+                }
+
+                @Override
+                public Long getId(Object staff) {
+                    return ((george.singletablestrategy.Staff) staff).getId();
+                }
+
+                @Override
+                public void create(int n) {
+                    ctrl.create((george.singletablestrategy.Staff) newStaff(n));
+                }
+
+                @Override
+                public List<?> findStaffEntities() {
+                    return ctrl.findStaffEntities();
+                }
+
+                @Override
+                public Object findStaff(Long id) {
+                    return ctrl.findStaff(id);
+                }
+
+                @Override
+                public int getStaffCount() {
+                    return ctrl.getStaffCount();
+                }
+            };
+        }
+    },
+    JOINED("JoinedTableStrategyJPA") {
+        @Override
+        public StaffAccess open(EntityManagerFactory emf) {
+            final george.joinedtablestrategy.services.StaffJpaController ctrl
+                    = new george.joinedtablestrategy.services.StaffJpaController(emf);
+            return new StaffAccess() {
+                @Override
+                public EntityManager getEntityManager() {
+                    return ctrl.getEntityManager();
+                }
+
+                @Override
+                public Object newStaff(int n) {
+                    return n % 2 == 0
+                            ? new george.joinedtablestrategy.entities.TeachingStaff(null, "Teacher " + n, "MSc MEd", "Maths")
+                            : new george.joinedtablestrategy.entities.NonTeachingStaff(null, "Clerk " + n, "Accounts");
+                }
+
+                @Override
+                public Long getId(Object staff) {
+                    return ((george.joinedtablestrategy.entities.Staff) staff).getId();
+                }
+
+                @Override
+                public void create(int n) {
+                    ctrl.create((george.joinedtablestrategy.entities.Staff) newStaff(n));
+                }
+
+                @Override
+                public List<?> findStaffEntities() {
+                    return ctrl.findStaffEntities();
+                }
+
+                @Override
+                public Object findStaff(Long id) {
+                    return ctrl.findStaff(id);
+                }
+
+                @Override
+                public int getStaffCount() {
+                    return ctrl.getStaffCount();
+                }
+            };
+        }
+    },
+    TABLE_PER_CLASS("TablePerClassStrategyJPA") {
+        @Override
+        public StaffAccess open(EntityManagerFactory emf) {
+            final george.tableperclassstrategy.service.StaffJpaController ctrl
+                    = new george.tableperclassstrategy.service.StaffJpaController(emf);
+            return new StaffAccess() {
+                @Override
+                public EntityManager getEntityManager() {
+                    return ctrl.getEntityManager();
+                }
+
+                @Override
+                public Object newStaff(int n) {
+                    return n % 2 == 0
+                            ? new george.tableperclassstrategy.entity.TeachingStaff(null, "Teacher " + n, "MSc MEd", "Maths")
+                            : new george.tableperclassstrategy.entity.NonTeachingStaff(null, "Clerk " + n, "Accounts");
+                }
+
+                @Override
+                public Long getId(Object staff) {
+                    return ((george.tableperclassstrategy.entity.Staff) staff).getId();
+                }
+
+                @Override
+                public void create(int n) {
+                    ctrl.create((george.tableperclassstrategy.entity.Staff) newStaff(n));
+                }
+
+                @Override
+                public List<?> findStaffEntities() {
+                    return ctrl.findStaffEntities();
+                }
+
+                @Override
+                public Object findStaff(Long id) {
+                    return ctrl.findStaff(id);
+                }
+
+                @Override
+                public int getStaffCount() {
+                    return ctrl.getStaffCount();
+                }
+            };
+        }
+    };
+
+    private final String persistenceUnit;
+
+    private StaffStrategy(String persistenceUnit) {
+        this.persistenceUnit = persistenceUnit;
+    }
+
+    public String getPersistenceUnit() {
+        return persistenceUnit;
+    }
+
+    public abstract StaffAccess open(EntityManagerFactory emf);
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the SINGLE_TABLE, JOINED and TABLE_PER_CLASS Staff hierarchies
+ * through their StaffJpaController against an embedded Derby database that
+ * is pre-loaded with {@code rows} staff members, half teaching and half
+ * non-teaching.
+ *
+ * Run with {@code java -jar benchmarks/target/benchmarks-1.0-SNAPSHOT.jar}.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class StaffStrategyBenchmark {
+
+    private static final int LOAD_CHUNK = 1000;
+
+    @Param({"SINGLE_TABLE", "JOINED", "TABLE_PER_CLASS"})
+    public StaffStrategy strategy;
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private EntityManagerFactory emf;
+    private StaffAccess staff;
+    private long[] ids;
+    private int inserted;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory(strategy.getPersistenceUnit(),
+                EmbeddedDerby.properties(strategy.name()));
+        staff = strategy.open(emf);
+        ids = new long[rows];
+        load();
+        inserted = rows;
+    }
+
+    private void load() {
+        EntityManager em = staff.getEntityManager();
+        try {
+            for (int first = 0; first < rows; first += LOAD_CHUNK) {
+                int last = Math.min(first + LOAD_CHUNK, rows);
+                Object[] chunk = new Object[last - first];
+                em.getTransaction().begin();
+                for (int n = first; n < last; n++) {
+                    chunk[n - first] = staff.newStaff(n);
+                    em.persist(chunk[n - first]);
+                }
+                em.flush();
+                em.getTransaction().commit();
+                for (int n = first; n < last; n++) {
+                    ids[n] = staff.getId(chunk[n - first]);
+                }
+                em.clear();
+            }
+        } finally {
+            em.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (emf != null && emf.isOpen()) {
+            emf.close();
+        }
+        EmbeddedDerby.drop(strategy.name());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void insert() {
+        staff.create(inserted++);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<?> findStaffEntities() {
+        return staff.findStaffEntities();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object findStaff() {
+        return staff.findStaff(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int getStaffCount() {
+        return staff.getStaffCount();
+    }
+}
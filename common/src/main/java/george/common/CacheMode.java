@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.CacheStoreMode;
+
+/**
+ * How a single lookup uses the shared (L2) entity cache. The mode is passed
+ * to EclipseLink as the standard retrieve and store mode hints, so it only
+ * affects the one call it is given to.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public enum CacheMode {
+
+    /**
+     * Answer from the cache when the entity is there, otherwise read it from
+     * the database and cache it.
+     */
+    USE(CacheRetrieveMode.USE, CacheStoreMode.USE),
+    /**
+     * Read from the database and leave the cache untouched.
+     */
+    BYPASS(CacheRetrieveMode.BYPASS, CacheStoreMode.BYPASS),
+    /**
+     * Read from the database and overwrite the cached copy, e.g. after the
+     * row was changed outside this persistence unit.
+     */
+    REFRESH(CacheRetrieveMode.BYPASS, CacheStoreMode.REFRESH);
+
+    private static final String RETRIEVE_MODE = "javax.persistence.cache.retrieveMode";
+    private static final String STORE_MODE = "javax.persistence.cache.storeMode";
+
+    private final Map<String, Object> hints;
+
+    private CacheMode(CacheRetrieveMode retrieveMode, CacheStoreMode storeMode) {
+        Map<String, Object> map = new HashMap<>();
+        map.put(RETRIEVE_MODE, retrieveMode);
+        map.put(STORE_MODE, storeMode);
+        this.hints = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * The hints for {@code EntityManager.find(Class, Object, Map)} or, one by
+     * one, for {@code Query.setHint}.
+     */
+    public Map<String, Object> hints() {
+        return hints;
+    }
+}
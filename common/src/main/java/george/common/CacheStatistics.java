@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.persistence.EntityManagerFactory;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+/**
+ * Hit and miss counts of the shared (L2) entity cache, overall and per
+ * entity class. EclipseLink reports a hit or a miss whenever a read by
+ * primary key, such as {@code find} or a lazy relationship, checks the cache.
+ *
+ * Opt in by passing this class name as the {@code eclipselink.profiler}
+ * property of the persistence unit, then read the counts through
+ * {@link #of(EntityManagerFactory)}. The profiler itself only counts those
+ * two events, but while any profiler is installed EclipseLink also takes a
+ * read lock on the cache for every access, so it is off by default.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class CacheStatistics extends SessionProfilerAdapter {
+
+    private final Map<Class<?>, LongAdder> hits = new ConcurrentHashMap<>();
+    private final Map<Class<?>, LongAdder> misses = new ConcurrentHashMap<>();
+
+    /**
+     * The statistics of {@code emf}, or {@code null} when its persistence
+     * unit does not use this profiler.
+     */
+    public static CacheStatistics of(EntityManagerFactory emf) {
+        SessionProfiler profiler = emf.unwrap(JpaEntityManagerFactory.class).getServerSession().getProfiler();
+        return profiler instanceof CacheStatistics ? (CacheStatistics) profiler : null;
+    }
+
+    @Override
+    public void occurred(String operationName, DatabaseQuery query, AbstractSession session) {
+        if (query == null || query.getReferenceClass() == null) {
+            return;
+        }
+        if (SessionProfiler.CacheHits.equals(operationName)) {
+            hits.computeIfAbsent(query.getReferenceClass(), (type) -> new LongAdder()).increment();
+        } else if (SessionProfiler.CacheMisses.equals(operationName)) {
+            misses.computeIfAbsent(query.getReferenceClass(), (type) -> new LongAdder()).increment();
+        }
+    }
+
+    public long getHits() {
+        return sum(hits);
+    }
+
+    public long getMisses() {
+        return sum(misses);
+    }
+
+    public long getHits(Class<?> type) {
+        LongAdder count = hits.get(type);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getMisses(Class<?> type) {
+        LongAdder count = misses.get(type);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Hits divided by all cache checks, or 0 before the first check.
+     */
+    public double getHitRatio() {
+        long hit = getHits();
+        long total = hit + getMisses();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public void reset() {
+        hits.clear();
+        misses.clear();
+    }
+
+    private static long sum(Map<Class<?>, LongAdder> counts) {
+        long sum = 0;
+        for (LongAdder count : counts.values()) {
+            sum += count.sum();
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics[ hits=" + getHits() + ", misses=" + getMisses() + " ]";
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-method statistics of one controller, each published as a
+ * {@link MethodStatsMXBean} named
+ * {@code <domain>:type=<controller>,id=<n>,method=<method>}, where the
+ * domain is the package of the controller's module, e.g.
+ * {@code george.criteriaapi}, and {@code n} numbers the instances so that
+ * several controllers of one class can be published side by side. Close
+ * the metrics to take the MBeans down again.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class ControllerMetrics implements AutoCloseable {
+
+    private static final AtomicLong INSTANCES = new AtomicLong();
+
+    /**
+     * A controller method body; {@code E} lets checked exceptions through.
+     */
+    public interface Call<T, E extends Exception> {
+
+        T call() throws E;
+    }
+
+    private final MBeanServer server;
+    private final String domain;
+    private final String controller;
+    private final long id = INSTANCES.incrementAndGet();
+    private final ConcurrentMap<String, MethodStats> methods = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public ControllerMetrics(String domain, String controller) {
+        this(ManagementFactory.getPlatformMBeanServer(), domain, controller);
+    }
+
+    public ControllerMetrics(MBeanServer server, String domain, String controller) {
+        this.server = server;
+        this.domain = domain;
+        this.controller = controller;
+    }
+
+    public <T, E extends Exception> T time(String method, Call<T, E> call) throws E {
+        MethodStats stats = getStats(method);
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.call();
+            failed = false;
+            return result;
+        } finally {
+            stats.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    public MethodStats getStats(String method) {
+        return methods.computeIfAbsent(method, this::register);
+    }
+
+    public Map<String, MethodStats> getAllStats() {
+        return Collections.unmodifiableMap(methods);
+    }
+
+    private MethodStats register(String method) {
+        MethodStats stats = new MethodStats();
+        if (server != null && !closed) {
+            try {
+                server.registerMBean(stats, objectName(method));
+            } catch (JMException ex) {
+                throw new IllegalStateException("Cannot register metrics of " + controller + "." + method, ex);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Removes all MBeans of this controller from the MBean server. Calls
+     * made afterwards are still counted but no longer published.
+     */
+    public void unregister() {
+        closed = true;
+        if (server == null) {
+            return;
+        }
+        for (String method : methods.keySet()) {
+            try {
+                server.unregisterMBean(objectName(method));
+            } catch (JMException ex) {
+                // already gone
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        unregister();
+    }
+
+    private ObjectName objectName(String method) throws JMException {
+        return new ObjectName(domain + ":type=" + ObjectName.quote(controller)
+                + ",id=" + id + ",method=" + ObjectName.quote(method));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.CursoredStream;
+
+/**
+ * Turns a query into a {@link Stream} backed by an EclipseLink database
+ * cursor, so a whole table can be walked without holding it on the heap.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class EntityCursors {
+
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    private EntityCursors() {
+    }
+
+    /**
+     * Opens a cursor for {@code query} that reads {@code fetchSize} rows per
+     * round trip. After every {@code fetchSize} entities the cursor buffer and
+     * the persistence context of {@code em} are cleared, so entities already
+     * handed out become detached. Closing the stream closes the cursor and
+     * {@code em}, also when opening the cursor fails.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Stream<T> stream(final EntityManager em, Query query, final int fetchSize) {
+        if (fetchSize < 1) {
+            em.close();
+            throw new IllegalArgumentException("fetchSize must be positive: " + fetchSize);
+        }
+        final CursoredStream cursor;
+        try {
+            query.setHint(QueryHints.CURSOR, HintValues.TRUE);
+            query.setHint(QueryHints.CURSOR_PAGE_SIZE, fetchSize);
+            query.setHint(QueryHints.JDBC_FETCH_SIZE, fetchSize);
+            cursor = (CursoredStream) query.getSingleResult();
+        } catch (RuntimeException ex) {
+            em.close();
+            throw ex;
+        }
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private long read;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (!cursor.hasNext()) {
+                    return false;
+                }
+                if (read > 0 && read % fetchSize == 0) {
+                    cursor.clear();
+                    em.clear();
+                }
+                read++;
+                action.accept((T) cursor.next());
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                cursor.close();
+            } finally {
+                em.close();
+            }
+        });
+    }
+
+    /**
+     * Concatenates the streams opened by {@code streams}, in order. Each
+     * stream is opened when the one before it is exhausted and closed right
+     * after, so at most one cursor is open at a time, and a short-circuiting
+     * operation stops reading where it stops; {@code flatMap} reads a whole
+     * inner stream before passing anything on. Closing the result closes the
+     * stream that is open.
+     */
+    public static <T> Stream<T> concat(List<Supplier<Stream<T>>> streams) {
+        Concatenation<T> concatenation = new Concatenation<>(streams.iterator());
+        return StreamSupport.stream(concatenation, false).onClose(concatenation::close);
+    }
+
+    private static final class Concatenation<T> extends Spliterators.AbstractSpliterator<T> {
+
+        private final Iterator<Supplier<Stream<T>>> streams;
+        private Stream<T> open;
+        private Spliterator<T> rows;
+
+        Concatenation(Iterator<Supplier<Stream<T>>> streams) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.streams = streams;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            while (rows == null || !rows.tryAdvance(action)) {
+                close();
+                if (!streams.hasNext()) {
+                    return false;
+                }
+                open = streams.next().get();
+                rows = open.spliterator();
+            }
+            return true;
+        }
+
+        void close() {
+            Stream<T> stream = open;
+            open = null;
+            rows = null;
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+/**
+ * Resolves many ids with as few IN-list queries as possible.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class EntityLookups {
+
+    public static final int MAX_IN_LIST = 500;
+
+    private EntityLookups() {
+    }
+
+    /**
+     * Loads the entities with the given ids using one query per
+     * {@link #MAX_IN_LIST} distinct ids. The result has one element per
+     * requested id, in the caller's order, and is empty where no entity
+     * exists (or the id is {@code null}).
+     */
+    public static <T> List<Optional<T>> findAll(EntityManager em, Class<T> type,
+            SingularAttribute<? super T, Long> idAttribute, Function<? super T, Long> idOf,
+            Collection<Long> ids) {
+        Set<Long> distinct = new LinkedHashSet<>(ids);
+        distinct.remove(null);
+        List<Long> pending = new ArrayList<>(distinct);
+        Map<Long, T> found = new HashMap<>();
+        for (int from = 0; from < pending.size(); from += MAX_IN_LIST) {
+            List<Long> chunk = pending.subList(from, Math.min(from + MAX_IN_LIST, pending.size()));
+            CriteriaQuery<T> cq = em.getCriteriaBuilder().createQuery(type);
+            Root<T> rt = cq.from(type);
+            cq.select(rt).where(rt.get(idAttribute).in(chunk));
+            for (T entity : em.createQuery(cq).getResultList()) {
+                found.put(idOf.apply(entity), entity);
+            }
+        }
+        List<Optional<T>> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            result.add(Optional.ofNullable(id == null ? null : found.get(id)));
+        }
+        return result;
+    }
+
+    /**
+     * Loads the entities of {@code type}, subclasses included, whose ids are
+     * in {@code ids} using one query per {@link #MAX_IN_LIST} ids, and maps
+     * them by id. Ids with no entity have no mapping.
+     */
+    public static <T> Map<Object, T> findById(EntityManager em, Class<T> type, Collection<?> ids) {
+        EntityType<T> entityType = em.getMetamodel().entity(type);
+        String idName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+        PersistenceUnitUtil util = em.getEntityManagerFactory().getPersistenceUnitUtil();
+        List<?> pending = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<Object, T> found = new HashMap<>();
+        for (int from = 0; from < pending.size(); from += MAX_IN_LIST) {
+            List<?> chunk = pending.subList(from, Math.min(from + MAX_IN_LIST, pending.size()));
+            CriteriaQuery<T> cq = em.getCriteriaBuilder().createQuery(type);
+            Root<T> rt = cq.from(type);
+            cq.select(rt).where(rt.get(idName).in(chunk));
+            for (T entity : em.createQuery(cq).getResultList()) {
+                found.put(util.getIdentifier(entity), entity);
+            }
+        }
+        return found;
+    }
+}
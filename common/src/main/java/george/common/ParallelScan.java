@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+
+/**
+ * Reads whole tables in parallel: the id space between the smallest and the
+ * largest id is split into ranges, and each range is read through its own
+ * EntityManager and database cursor on a worker of a dedicated
+ * {@link ForkJoinPool}. Every range accumulates into its own container of
+ * the caller's {@link Collector}, and the containers are combined as the
+ * ranges join, so the entities are never held on the heap all at once.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class ParallelScan {
+
+    /**
+     * Ranges per worker, so that workers that finish early (sparse ranges)
+     * can steal the remaining ones.
+     */
+    public static final int RANGES_PER_WORKER = 4;
+
+    private ParallelScan() {
+    }
+
+    /**
+     * Scans every entity of {@code types}, one id space per type, with
+     * {@code parallelism} workers and connections.
+     */
+    public static <T, A, R> R scan(EntityManagerFactory emf, List<Class<? extends T>> types, String idAttribute,
+            Collector<? super T, A, R> collector, int parallelism, int fetchSize) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            A result = collector.supplier().get();
+            for (Class<? extends T> type : types) {
+                long[] bounds = bounds(emf, type, idAttribute);
+                if (bounds != null) {
+                    long span = Math.max(1, (bounds[1] - bounds[0]) / ((long) parallelism * RANGES_PER_WORKER) + 1);
+                    A part = pool.invoke(new RangeTask<>(emf, type, idAttribute, collector, fetchSize,
+                            bounds[0], bounds[1], span));
+                    result = collector.combiner().apply(result, part);
+                }
+            }
+            return collector.finisher().apply(result);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static long[] bounds(EntityManagerFactory emf, Class<?> type, String idAttribute) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Object[]> cq = cb.createQuery(Object[].class);
+            Path<Long> id = cq.from(type).get(idAttribute);
+            cq.multiselect(cb.min(id), cb.max(id));
+            Object[] row = em.createQuery(cq).getSingleResult();
+            if (row[0] == null) {
+                return null;
+            }
+            return new long[]{((Number) row[0]).longValue(), ((Number) row[1]).longValue()};
+        } finally {
+            em.close();
+        }
+    }
+
+    private static final class RangeTask<T, S extends T, A> extends RecursiveTask<A> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final EntityManagerFactory emf;
+        private final Class<S> type;
+        private final String idAttribute;
+        private final Collector<? super T, A, ?> collector;
+        private final int fetchSize;
+        private final long low;
+        private final long high;
+        private final long span;
+
+        RangeTask(EntityManagerFactory emf, Class<S> type, String idAttribute, Collector<? super T, A, ?> collector,
+                int fetchSize, long low, long high, long span) {
+            this.emf = emf;
+            this.type = type;
+            this.idAttribute = idAttribute;
+            this.collector = collector;
+            this.fetchSize = fetchSize;
+            this.low = low;
+            this.high = high;
+            this.span = span;
+        }
+
+        @Override
+        protected A compute() {
+            if (high - low < span) {
+                return scanRange();
+            }
+            long middle = low + (high - low) / 2;
+            RangeTask<T, S, A> upper = new RangeTask<>(emf, type, idAttribute, collector, fetchSize,
+                    middle + 1, high, span);
+            upper.fork();
+            A lower = new RangeTask<>(emf, type, idAttribute, collector, fetchSize, low, middle, span).compute();
+            return collector.combiner().apply(lower, upper.join());
+        }
+
+        private A scanRange() {
+            A container = collector.supplier().get();
+            BiConsumer<A, ? super T> accumulator = collector.accumulator();
+            EntityManager em = emf.createEntityManager();
+            TypedQuery<S> query;
+            try {
+                CriteriaBuilder cb = em.getCriteriaBuilder();
+                CriteriaQuery<S> cq = cb.createQuery(type);
+                Root<S> rt = cq.from(type);
+                cq.select(rt).where(cb.between(rt.<Long>get(idAttribute), low, high));
+                query = em.createQuery(cq);
+            } catch (RuntimeException ex) {
+                em.close();
+                throw ex;
+            }
+            // from here on the stream owns em and closes it, also when opening the cursor fails
+            try (Stream<S> entities = EntityCursors.stream(em, query, fetchSize)) {
+                entities.forEach((entity) -> accumulator.accept(container, entity));
+            }
+            return container;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+
+/**
+ * New values for some attributes of one entity, written by the
+ * controllers' {@code patch...} methods with a single UPDATE by id instead
+ * of loading and merging the whole entity:
+ *
+ * <pre>
+ * controller.patchEmployee(id, new Patch&lt;Employee&gt;().set(Employee_.salary, 52000.0));
+ * </pre>
+ *
+ * The UPDATE also increments the version, so a concurrent edit of the same
+ * entity fails instead of overwriting the patch.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class Patch<T> {
+
+    private final Map<SingularAttribute<? super T, ?>, Object> values = new LinkedHashMap<>();
+
+    public <Y> Patch<T> set(SingularAttribute<? super T, Y> attribute, Y value) {
+        if (attribute.isId() || attribute.isVersion()) {
+            throw new IllegalArgumentException("Cannot patch " + attribute.getName());
+        }
+        values.put(attribute, value);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    public Map<SingularAttribute<? super T, ?>, Object> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * UPDATE type e SET e.attribute = :p0, ..., e.version = e.version + 1
+     * WHERE e.id = :id
+     *
+     * Built as JPQL with bound parameters rather than as a CriteriaUpdate,
+     * because EclipseLink caches parsed JPQL and inlines criteria literals.
+     * Patches of the same attributes then share one prepared statement.
+     */
+    public Query toQuery(EntityManager em, Class<? extends T> type, Object id) {
+        if (values.isEmpty()) {
+            throw new IllegalStateException("Empty patch");
+        }
+        EntityType<? extends T> entity = em.getMetamodel().entity(type);
+        StringBuilder jpql = new StringBuilder("UPDATE ").append(entity.getName()).append(" e SET ");
+        int n = 0;
+        for (SingularAttribute<? super T, ?> attribute : values.keySet()) {
+            jpql.append("e.").append(attribute.getName()).append(" = :p").append(n++).append(", ");
+        }
+        if (entity.hasVersionAttribute()) {
+            String version = entity.getVersion(Long.class).getName();
+            jpql.append("e.").append(version).append(" = e.").append(version).append(" + 1, ");
+        }
+        jpql.setLength(jpql.length() - 2);
+        jpql.append(" WHERE e.").append(entity.getId(entity.getIdType().getJavaType()).getName()).append(" = :id");
+        Query q = em.createQuery(jpql.toString());
+        // update-all queries print their arguments into the SQL by default
+        q.setHint(QueryHints.BIND_PARAMETERS, HintValues.TRUE);
+        n = 0;
+        for (Object value : values.values()) {
+            q.setParameter("p" + n++, value);
+        }
+        q.setParameter("id", id);
+        return q;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+
+/**
+ * Small LRU cache for query results such as counts and finder lists, with a
+ * time to live and hit/miss counters. Every entry records the entity class
+ * it was read from and whether it depends on column values or only on which
+ * rows exist ({@link Reads}). A controller reports its writes with
+ * {@link #rowsChanged} and {@link #valuesChanged}, which drop only the
+ * entries of that class, its superclasses and its subclasses; a count
+ * survives an edit, a list of teaching staff survives the creation of a
+ * non-teaching one. A result loaded while an invalidation happened is not
+ * stored, so a cached value is never older than the last write through a
+ * controller sharing the cache.
+ * <p>
+ * Lists of entities are cached as ids ({@link #getEntities}): every caller
+ * gets instances of its own, read by id from the shared cache of the
+ * persistence unit, and never the ones another caller may have changed. The
+ * ids missing from the shared cache are read with one IN-list query, so a
+ * hit never sends more statements than the finder it stands in for; lists
+ * longer than {@link EntityLookups#MAX_IN_LIST} are not cached.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class ResultCache {
+
+    /**
+     * What a cached result reads from the rows of its entity class.
+     */
+    public enum Reads {
+        /**
+         * Only which rows exist, e.g. a count or a list of all rows in id
+         * order; changing a row does not change the result.
+         */
+        ROWS,
+        /**
+         * Column values as well, e.g. a finder with a condition or an
+         * aggregate.
+         */
+        VALUES
+    }
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<Object, Entry> entries;
+    private long generation;
+    private long hits;
+    private long misses;
+
+    public ResultCache(long ttl, TimeUnit unit, final int maxEntries) {
+        if (ttl <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("ttl and maxEntries must be positive");
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the live value cached under {@code key}, or loads, caches and
+     * returns it. The value is handed to every caller as it is, so it should
+     * be immutable. The loader runs outside the cache lock.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<?> type, Reads reads, Supplier<T> loader) {
+        final long now = System.nanoTime();
+        final long loadGeneration;
+        synchronized (this) {
+            Entry entry = live(key, now);
+            if (entry != null) {
+                hits++;
+                return (T) entry.value;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+        T value = loader.get();
+        put(key, new Entry(value, type, reads, now), loadGeneration);
+        return value;
+    }
+
+    /**
+     * Like {@link #get}, for a list of entities of {@code type}: caches their
+     * ids and, on a hit, reads them again with an entity manager of
+     * {@code emf}, so no two callers share an instance. The entities in the
+     * shared cache are taken from there and the others read with one
+     * IN-list query. When one of them is gone the list is loaded anew. A
+     * list longer than {@link EntityLookups#MAX_IN_LIST} is returned without
+     * being cached. Both the loader and the reads by id run outside the
+     * cache lock.
+     */
+    public <T> List<T> getEntities(Object key, EntityManagerFactory emf, Class<?> type, Reads reads,
+            Supplier<List<T>> loader) {
+        final long now = System.nanoTime();
+        Entry entry;
+        synchronized (this) {
+            entry = live(key, now);
+        }
+        if (entry != null) {
+            List<T> found = find(emf, type, (EntityIds) entry.value);
+            synchronized (this) {
+                if (found != null) {
+                    hits++;
+                    return found;
+                }
+                entries.remove(key, entry);
+            }
+        }
+        final long loadGeneration;
+        synchronized (this) {
+            misses++;
+            loadGeneration = generation;
+        }
+        List<T> value = loader.get();
+        if (value.size() <= EntityLookups.MAX_IN_LIST) {
+            put(key, new Entry(new EntityIds(emf.getPersistenceUnitUtil(), value), type, reads, now),
+                    loadGeneration);
+        }
+        return value;
+    }
+
+    /**
+     * Drops the entries of {@code type} and of the classes related to it
+     * after rows were inserted or deleted.
+     */
+    public void rowsChanged(Class<?> type) {
+        invalidate(type, Reads.ROWS);
+    }
+
+    /**
+     * Drops the entries of {@code type} and of the classes related to it
+     * that read column values, after rows were updated.
+     */
+    public void valuesChanged(Class<?> type) {
+        invalidate(type, Reads.VALUES);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getTtl(TimeUnit unit) {
+        return unit.convert(ttlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    private Entry live(Object key, long now) {
+        Entry entry = entries.get(key);
+        if (entry != null && now - entry.loadedAt >= ttlNanos) {
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void put(Object key, Entry entry, long loadGeneration) {
+        if (loadGeneration == generation) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Drops the entries of classes related to {@code type} that read at least
+     * {@code changed}: a change of rows affects every entry, a change of
+     * values only the entries that read values.
+     */
+    private synchronized void invalidate(Class<?> type, Reads changed) {
+        generation++;
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            if (entry.reads.compareTo(changed) >= 0
+                    && (entry.type.isAssignableFrom(type) || type.isAssignableFrom(entry.type))) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Reads the entities of {@code ids} in their order, or returns null when
+     * one of them no longer exists. The ones not in the shared cache are read
+     * first with IN-list queries, so the finds by id that follow are answered
+     * from the shared cache or the persistence context.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> find(EntityManagerFactory emf, Class<?> type, EntityIds ids) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            Cache cache = emf.getCache();
+            List<Object> uncached = new ArrayList<>();
+            for (Object id : ids.ids) {
+                if (!cache.contains(type, id)) {
+                    uncached.add(id);
+                }
+            }
+            EntityLookups.findById(em, type, uncached);
+            List<T> found = new ArrayList<>(ids.ids.size());
+            for (Object id : ids.ids) {
+                Object entity = em.find(type, id);
+                if (entity == null) {
+                    return null;
+                }
+                found.add((T) entity);
+            }
+            return found;
+        } finally {
+            em.close();
+        }
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private final Class<?> type;
+        private final Reads reads;
+        private final long loadedAt;
+
+        private Entry(Object value, Class<?> type, Reads reads, long loadedAt) {
+            this.value = value;
+            this.type = type;
+            this.reads = reads;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * The ids of a list of entities.
+     */
+    private static final class EntityIds {
+
+        private final List<Object> ids;
+
+        private EntityIds(PersistenceUnitUtil util, List<?> entities) {
+            List<Object> entityIds = new ArrayList<>(entities.size());
+            for (Object entity : entities) {
+                entityIds.add(util.getIdentifier(entity));
+            }
+            this.ids = Collections.unmodifiableList(entityIds);
+        }
+    }
+}
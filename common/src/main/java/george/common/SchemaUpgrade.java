@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.VersionLockingPolicy;
+import org.eclipse.persistence.internal.helper.DatabaseField;
+import org.eclipse.persistence.internal.helper.DatabaseTable;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.sequencing.TableSequence;
+import org.eclipse.persistence.sessions.DatabaseSession;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.tools.schemaframework.IndexDefinition;
+import org.eclipse.persistence.tools.schemaframework.SchemaManager;
+
+/**
+ * Brings tables created by an earlier build up to the current mapping. With
+ * the {@code create} schema action EclipseLink leaves existing tables alone,
+ * so a column or an index added to an entity later never reaches a database
+ * that already has the table. Registered as
+ * {@code eclipselink.session-event-listener}, this listener adds on login:
+ * <ul>
+ * <li>missing {@code @Version} columns, as {@code BIGINT DEFAULT 1} so that
+ * rows written before have a version to check;</li>
+ * <li>missing {@code @Index} indexes;</li>
+ * <li>rows of {@code @TableGenerator}s that are behind the ids in use: a
+ * generator row is raised to the largest id of its tables, so a generator
+ * that is new to the database, or whose row was recreated at 0, does not
+ * hand out ids that rows already have.</li>
+ * </ul>
+ * Tables that do not exist yet are left to EclipseLink's schema generation,
+ * which runs after login; the sequence table is created early when existing
+ * entity tables need a generator row.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class SchemaUpgrade extends SessionEventAdapter {
+
+    @Override
+    public void postLogin(SessionEvent event) {
+        Session session = event.getSession();
+        Connection connection = (Connection) session.getLogin().connectToDatasource(null, session);
+        try {
+            new Upgrade(session, connection).run();
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Cannot upgrade the schema of " + session.getName(), ex);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException ex) {
+                // nothing left to release
+            }
+        }
+    }
+
+    private static class Upgrade {
+
+        private final Session session;
+        private final Connection connection;
+        private final DatabaseMetaData metaData;
+
+        Upgrade(Session session, Connection connection) throws SQLException {
+            this.session = session;
+            this.connection = connection;
+            this.metaData = connection.getMetaData();
+        }
+
+        void run() throws SQLException {
+            Map<String, DatabaseTable> tables = new LinkedHashMap<>();
+            for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+                for (DatabaseTable table : descriptor.getTables()) {
+                    tables.putIfAbsent(table.getQualifiedName(), table);
+                }
+                if (descriptor.getOptimisticLockingPolicy() instanceof VersionLockingPolicy) {
+                    addVersion(((VersionLockingPolicy) descriptor.getOptimisticLockingPolicy()).getWriteLockField());
+                }
+            }
+            for (DatabaseTable table : tables.values()) {
+                addIndexes(table);
+            }
+            raiseSequences();
+        }
+
+        private void addVersion(DatabaseField field) throws SQLException {
+            DatabaseTable table = field.getTable();
+            if (!exists(table) || hasColumn(table, field.getName())) {
+                return;
+            }
+            execute("ALTER TABLE " + table.getQualifiedName() + " ADD COLUMN " + field.getName()
+                    + " BIGINT DEFAULT 1");
+        }
+
+        private void addIndexes(DatabaseTable table) throws SQLException {
+            if (!table.hasIndexes() || !exists(table)) {
+                return;
+            }
+            Set<String> existing = new HashSet<>();
+            try (ResultSet rs = metaData.getIndexInfo(null, schemaOf(table), identifier(table.getName()), false,
+                    true)) {
+                while (rs.next()) {
+                    existing.add(rs.getString("INDEX_NAME"));
+                }
+            }
+            for (IndexDefinition index : table.getIndexes()) {
+                if (!existing.contains(identifier(index.getName()))) {
+                    execute("CREATE " + (index.isUnique() ? "UNIQUE " : "") + "INDEX " + index.getName() + " ON "
+                            + table.getQualifiedName() + " (" + String.join(", ", index.getFields()) + ")");
+                }
+            }
+        }
+
+        private void raiseSequences() throws SQLException {
+            Map<String, TableSequence> sequences = new LinkedHashMap<>();
+            Map<String, Long> maxIds = new HashMap<>();
+            for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+                if (!descriptor.usesSequenceNumbers() || !(descriptor.getSequence() instanceof TableSequence)) {
+                    continue;
+                }
+                DatabaseField id = descriptor.getSequenceNumberField();
+                if (!exists(id.getTable())) {
+                    continue;
+                }
+                TableSequence sequence = (TableSequence) descriptor.getSequence();
+                sequences.put(sequence.getName(), sequence);
+                maxIds.merge(sequence.getName(), maxOf(id), Math::max);
+            }
+            boolean created = false;
+            for (TableSequence sequence : sequences.values()) {
+                long maxId = maxIds.get(sequence.getName());
+                if (maxId <= 0) {
+                    continue;
+                }
+                if (!created && !exists(sequence.getTable())) {
+                    new SchemaManager((DatabaseSession) session).createSequences();
+                    created = true;
+                }
+                raise(sequence, maxId);
+            }
+        }
+
+        private long maxOf(DatabaseField id) throws SQLException {
+            try (Statement statement = connection.createStatement();
+                    ResultSet rs = statement.executeQuery("SELECT MAX(" + id.getName() + ") FROM "
+                            + id.getTable().getQualifiedName())) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+
+        /**
+         * Sets the row of {@code sequence} to {@code maxId} unless it is at
+         * least that high already, inserting the row when it is missing.
+         */
+        private void raise(TableSequence sequence, long maxId) throws SQLException {
+            String table = sequence.getQualifiedTableName();
+            String update = "UPDATE " + table + " SET " + sequence.getCounterFieldName() + " = ? WHERE "
+                    + sequence.getNameFieldName() + " = ? AND " + sequence.getCounterFieldName() + " < ?";
+            try (PreparedStatement statement = connection.prepareStatement(update)) {
+                statement.setLong(1, maxId);
+                statement.setString(2, sequence.getName());
+                statement.setLong(3, maxId);
+                if (statement.executeUpdate() > 0) {
+                    log(update + " [" + maxId + ", " + sequence.getName() + "]");
+                    return;
+                }
+            }
+            String select = "SELECT " + sequence.getCounterFieldName() + " FROM " + table + " WHERE "
+                    + sequence.getNameFieldName() + " = ?";
+            try (PreparedStatement statement = connection.prepareStatement(select)) {
+                statement.setString(1, sequence.getName());
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (rs.next()) {
+                        return;
+                    }
+                }
+            }
+            String insert = "INSERT INTO " + table + " (" + sequence.getNameFieldName() + ", "
+                    + sequence.getCounterFieldName() + ") VALUES (?, ?)";
+            try (PreparedStatement statement = connection.prepareStatement(insert)) {
+                statement.setString(1, sequence.getName());
+                statement.setLong(2, maxId);
+                statement.executeUpdate();
+            }
+            log(insert + " [" + sequence.getName() + ", " + maxId + "]");
+        }
+
+        private boolean exists(DatabaseTable table) throws SQLException {
+            try (ResultSet rs = metaData.getTables(null, schemaOf(table), identifier(table.getName()), null)) {
+                return rs.next();
+            }
+        }
+
+        private boolean hasColumn(DatabaseTable table, String column) throws SQLException {
+            try (ResultSet rs = metaData.getColumns(null, schemaOf(table), identifier(table.getName()),
+                    identifier(column))) {
+                return rs.next();
+            }
+        }
+
+        private String schemaOf(DatabaseTable table) throws SQLException {
+            String qualifier = table.getTableQualifier();
+            return identifier(qualifier.isEmpty() ? metaData.getUserName() : qualifier);
+        }
+
+        private String identifier(String name) throws SQLException {
+            if (metaData.storesUpperCaseIdentifiers()) {
+                return name.toUpperCase(Locale.ROOT);
+            }
+            if (metaData.storesLowerCaseIdentifiers()) {
+                return name.toLowerCase(Locale.ROOT);
+            }
+            return name;
+        }
+
+        private void execute(String sql) throws SQLException {
+            log(sql);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(sql);
+            }
+        }
+
+        private void log(String sql) {
+            session.getSessionLog().log(SessionLog.INFO, SessionLog.DDL, sql, null, false);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.sequencing.Sequence;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * Lets the allocation size of every id generator be tuned without
+ * recompiling. For a generator named {@code EMPLOYEE_SEQ} set the persistence
+ * unit or system property {@code george.sequence.EMPLOYEE_SEQ.allocation-size};
+ * generators without the property keep the size of their annotation.
+ *
+ * EclipseLink hands out the ids of an allocated block from memory and only
+ * touches the SEQUENCE table, on its own sequence connection pool, when the
+ * block runs out, so a larger block means fewer row locks on that table.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class SequenceCustomizer implements SessionCustomizer {
+
+    public static String allocationSizeProperty(String sequence) {
+        return "george.sequence." + sequence + ".allocation-size";
+    }
+
+    @Override
+    public void customize(Session session) {
+        for (Object value : session.getDatasourcePlatform().getSequences().values()) {
+            Sequence sequence = (Sequence) value;
+            String property = allocationSizeProperty(sequence.getName());
+            Object size = session.getProperty(property);
+            if (size == null) {
+                size = System.getProperty(property);
+            }
+            if (size != null) {
+                sequence.setPreallocationSize(Integer.parseInt(size.toString().trim()));
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Records which indexes embedded Derby reads for the statements sent through
+ * one entity manager. The manager begins a transaction and unwraps its
+ * connection, which makes EclipseLink bind that connection to the manager
+ * until the transaction ends; runtime statistics are switched on for it with
+ * {@code SYSCS_SET_RUNTIMESTATISTICS} and saved to XPLAIN tables in a schema
+ * of its own; {@link #indexes()} and {@link #tables()} read them back. A controller under test is
+ * pointed at {@link #entityManager()}, whose {@code close()} does nothing so
+ * that the connection outlives the finder, and which serializes its calls so
+ * that a controller may use it from several threads.
+ * <p>
+ * Derby keeps the XPLAIN settings for the whole database rather than per
+ * connection, so at most one recording may be open at a time.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class QueryPlans implements AutoCloseable {
+
+    private static final AtomicInteger SCHEMAS = new AtomicInteger();
+
+    private static final String SCANS = "SELECT sp.SCAN_OBJECT_NAME FROM %1$s.SYSXPLAIN_STATEMENTS st"
+            + " JOIN %1$s.SYSXPLAIN_RESULTSETS rs ON rs.STMT_ID = st.STMT_ID"
+            + " JOIN %1$s.SYSXPLAIN_SCAN_PROPS sp ON sp.SCAN_RS_ID = rs.SCAN_RS_ID"
+            + " WHERE sp.SCAN_OBJECT_TYPE = 'I'";
+
+    private static final String TABLES = "SELECT t.TABLENAME FROM %1$s.SYSXPLAIN_SCAN_PROPS sp"
+            + " JOIN SYS.SYSTABLES t ON t.TABLETYPE = 'T'"
+            + " AND (sp.SCAN_OBJECT_TYPE = 'T' AND sp.SCAN_OBJECT_NAME = t.TABLENAME"
+            + " OR sp.SCAN_OBJECT_TYPE = 'I' AND t.TABLEID IN (SELECT c.TABLEID FROM SYS.SYSCONGLOMERATES c"
+            + " WHERE c.CONGLOMERATENAME = sp.SCAN_OBJECT_NAME)"
+            + " OR sp.SCAN_OBJECT_TYPE = 'C' AND t.TABLEID IN (SELECT k.TABLEID FROM SYS.SYSCONSTRAINTS k"
+            + " WHERE k.CONSTRAINTNAME = sp.SCAN_OBJECT_NAME))";
+
+    private final EntityManager em;
+    private final Connection connection;
+    private final String schema;
+    private final EntityManager entityManager;
+    private boolean recording;
+
+    private QueryPlans(EntityManagerFactory emf) throws SQLException {
+        em = emf.createEntityManager();
+        em.getTransaction().begin();
+        connection = em.unwrap(Connection.class);
+        schema = "PLANS" + SCHEMAS.incrementAndGet();
+        entityManager = (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(),
+                new Class<?>[]{EntityManager.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("close")) {
+                        return null;
+                    }
+                    synchronized (em) {
+                        try {
+                            return method.invoke(em, args);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                    }
+                });
+        call("SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)");
+        call("SYSCS_UTIL.SYSCS_SET_XPLAIN_SCHEMA('" + schema + "')");
+        recording = true;
+    }
+
+    /**
+     * Starts recording the plans of {@code emf}'s embedded Derby database.
+     */
+    public static QueryPlans record(EntityManagerFactory emf) {
+        try {
+            return new QueryPlans(emf);
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Cannot switch on the runtime statistics", ex);
+        }
+    }
+
+    /**
+     * The entity manager whose statements are recorded; closing it is left to
+     * {@link #close()}.
+     */
+    public EntityManager entityManager() {
+        return entityManager;
+    }
+
+    /**
+     * Stops recording and returns the names of the indexes the recorded
+     * statements scanned.
+     */
+    public Set<String> indexes() {
+        return names(SCANS);
+    }
+
+    /**
+     * Stops recording and returns the names of the tables the recorded
+     * statements read, through a table scan or through one of their indexes.
+     */
+    public Set<String> tables() {
+        return names(TABLES);
+    }
+
+    private Set<String> names(String query) {
+        try {
+            stop();
+            Set<String> names = new TreeSet<>();
+            try (Statement statement = connection.createStatement();
+                    ResultSet rs = statement.executeQuery(String.format(query, schema))) {
+                while (rs.next()) {
+                    names.add(rs.getString(1));
+                }
+            }
+            return names;
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Cannot read the runtime statistics", ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            stop();
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Cannot switch off the runtime statistics", ex);
+        } finally {
+            em.getTransaction().rollback();
+            em.close();
+        }
+    }
+
+    private void stop() throws SQLException {
+        if (recording) {
+            recording = false;
+            call("SYSCS_UTIL.SYSCS_SET_XPLAIN_SCHEMA('')");
+            call("SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(0)");
+        }
+    }
+
+    private void call(String procedure) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CALL " + procedure);
+        }
+    }
+}
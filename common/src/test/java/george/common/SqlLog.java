@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.persistence.EntityManagerFactory;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.logging.AbstractSessionLog;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.logging.SessionLogEntry;
+
+/**
+ * Keeps the SQL that EclipseLink logs for a persistence unit, and the
+ * commits of its transactions, and drops everything else.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class SqlLog extends AbstractSessionLog {
+
+    private static final String COMMIT = "commit_transaction";
+
+    private final List<String> statements = new CopyOnWriteArrayList<>();
+    private final List<String> commits = new CopyOnWriteArrayList<>();
+
+    private SqlLog() {
+    }
+
+    /**
+     * Replaces the log of {@code emf} with a new SqlLog.
+     */
+    public static SqlLog install(EntityManagerFactory emf) {
+        SqlLog log = new SqlLog();
+        JpaHelper.getServerSession(emf).setSessionLog(log);
+        return log;
+    }
+
+    @Override
+    public boolean shouldLog(int level, String category) {
+        return SessionLog.SQL.equals(category) || SessionLog.TRANSACTION.equals(category);
+    }
+
+    @Override
+    public void log(SessionLogEntry entry) {
+        if (SessionLog.SQL.equals(entry.getNameSpace())) {
+            statements.add(entry.getMessage());
+        } else if (COMMIT.equals(entry.getMessage())) {
+            commits.add(entry.getMessage());
+        }
+    }
+
+    public List<String> statements() {
+        return new ArrayList<>(statements);
+    }
+
+    public List<String> selects() {
+        List<String> selects = new ArrayList<>();
+        for (String statement : statements) {
+            if (statement.startsWith("SELECT")) {
+                selects.add(statement);
+            }
+        }
+        return selects;
+    }
+
+    /**
+     * Transactions committed on the database.
+     */
+    public int commits() {
+        return commits.size();
+    }
+
+    public void clear() {
+        statements.clear();
+        commits.clear();
+    }
+}
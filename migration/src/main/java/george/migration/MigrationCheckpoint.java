@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.migration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress of a migration, kept in a properties file: the last id copied
+ * of every {@link StaffKind}. The file is rewritten through a temporary file
+ * and an atomic rename after every committed batch, so a migration that is
+ * stopped or crashes resumes after the last batch it committed.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class MigrationCheckpoint {
+
+    private static final String SOURCE = "source";
+    private static final String TARGET = "target";
+
+    private final Path file;
+    private final Properties progress;
+
+    private MigrationCheckpoint(Path file, Properties progress) {
+        this.file = file;
+        this.progress = progress;
+    }
+
+    /**
+     * Loads the checkpoint of the migration from {@code source} to
+     * {@code target} in {@code file}, or starts a new one when the file does
+     * not exist. A file written by a migration between other schemas is
+     * rejected.
+     */
+    public static MigrationCheckpoint open(Path file, StaffSchema source, StaffSchema target) throws IOException {
+        Properties progress = new Properties();
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                progress.load(in);
+            }
+            if (!source.name().equals(progress.getProperty(SOURCE))
+                    || !target.name().equals(progress.getProperty(TARGET))) {
+                throw new IllegalStateException("The checkpoint " + file + " belongs to the migration from "
+                        + progress.getProperty(SOURCE) + " to " + progress.getProperty(TARGET) + ".");
+            }
+        } else {
+            progress.setProperty(SOURCE, source.name());
+            progress.setProperty(TARGET, target.name());
+        }
+        return new MigrationCheckpoint(file, progress);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * The last id of {@code kind} copied so far, or null when none was.
+     */
+    public Long getLastId(StaffKind kind) {
+        String id = progress.getProperty(kind.name());
+        return id == null ? null : Long.valueOf(id);
+    }
+
+    void advance(StaffKind kind, Long lastId) {
+        progress.setProperty(kind.name(), lastId.toString());
+    }
+
+    void save() {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                progress.store(out, "Staff migration checkpoint");
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot write the checkpoint " + file, ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "george.migration.MigrationCheckpoint[ file=" + file + " ]";
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.migration;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Outcome of a migration run: the rows copied and skipped per kind in this
+ * run, how long it took, and the number of rows of every kind in the source
+ * and the target once it finished, and how many rows differ between them.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class MigrationReport {
+
+    private final Map<StaffKind, Long> copied;
+    private final Map<StaffKind, Long> skipped;
+    private final Map<StaffKind, Long> sourceCounts;
+    private final Map<StaffKind, Long> targetCounts;
+    private final Map<StaffKind, Long> differing;
+    private final long elapsedNanos;
+
+    public MigrationReport(Map<StaffKind, Long> copied, Map<StaffKind, Long> skipped,
+            Map<StaffKind, Long> sourceCounts, Map<StaffKind, Long> targetCounts, Map<StaffKind, Long> differing,
+            long elapsedNanos) {
+        this.copied = Collections.unmodifiableMap(new EnumMap<>(copied));
+        this.skipped = Collections.unmodifiableMap(new EnumMap<>(skipped));
+        this.sourceCounts = Collections.unmodifiableMap(new EnumMap<>(sourceCounts));
+        this.targetCounts = Collections.unmodifiableMap(new EnumMap<>(targetCounts));
+        this.differing = Collections.unmodifiableMap(new EnumMap<>(differing));
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getCopied(StaffKind kind) {
+        return copied.getOrDefault(kind, 0L);
+    }
+
+    /**
+     * Rows that were already in the target, e.g. written by the batch that
+     * was committed right before a crash.
+     */
+    public long getSkipped(StaffKind kind) {
+        return skipped.getOrDefault(kind, 0L);
+    }
+
+    public long getSourceCount(StaffKind kind) {
+        return sourceCounts.getOrDefault(kind, 0L);
+    }
+
+    public long getTargetCount(StaffKind kind) {
+        return targetCounts.getOrDefault(kind, 0L);
+    }
+
+    /**
+     * Rows of the kind that are missing in the source or the target, or whose
+     * columns differ between the two.
+     */
+    public long getDiffering(StaffKind kind) {
+        return differing.getOrDefault(kind, 0L);
+    }
+
+    public long getRows() {
+        long rows = 0;
+        for (long n : copied.values()) {
+            rows += n;
+        }
+        return rows;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos > 0 ? getRows() * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * Whether source and target hold the same rows of every kind.
+     */
+    public boolean isVerified() {
+        for (StaffKind kind : StaffKind.values()) {
+            if (getSourceCount(kind) != getTargetCount(kind) || getDiffering(kind) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format("%d rows in %d ms (%.1f rows/s), %s",
+                getRows(), elapsedNanos / 1000000, getRowsPerSecond(), isVerified() ? "verified" : "MISMATCH"));
+        for (StaffKind kind : StaffKind.values()) {
+            report.append(String.format("%n  %s: copied %d, skipped %d, source %d, target %d, differing %d",
+                    kind, getCopied(kind), getSkipped(kind), getSourceCount(kind), getTargetCount(kind),
+                    getDiffering(kind)));
+        }
+        return report.toString();
+    }
+}
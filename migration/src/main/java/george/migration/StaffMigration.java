@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.migration;
+
+import george.common.EntityCursors;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import javax.persistence.CacheStoreMode;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import org.eclipse.persistence.config.BatchWriting;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.config.QueryHints;
+
+/**
+ * Copies the Staff population from one inheritance strategy to another
+ * while the source stays in use. Every kind is read through a database
+ * cursor in id order, converted through {@link StaffRecord} and persisted
+ * into the target in batches of one transaction each, keeping the ids.
+ * After every batch the {@link MigrationCheckpoint} is saved, so a run that
+ * is stopped resumes after the last committed batch; ids already in the
+ * target are skipped, so the batch committed right before a crash is not
+ * written twice. Passes are repeated until one finds no new rows, which
+ * picks up the rows inserted into the source meanwhile. Finally the id
+ * generator of the target is moved past the copied ids, the rows of every
+ * kind are counted on both sides and source and target are read once more
+ * side by side in id order and compared column by column.
+ *
+ * Updates and deletes of rows that were already copied are not carried
+ * over, and ids are handed out in preallocated blocks, so a row inserted
+ * late can carry an id below the checkpoint. The comparison reports all of
+ * them as differing rows, which a count alone would miss when an insert and
+ * a delete cancel out; running the migration again with a new checkpoint
+ * file then copies the missing rows, while rows that changed or went away
+ * in the source have to be reconciled by hand.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class StaffMigration {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * The id generators of all three hierarchies keep their rows in this
+     * table; see the {@code @TableGenerator} of each Staff entity.
+     */
+    private static final String ADVANCE_SEQUENCE
+            = "UPDATE SEQUENCE SET SEQ_COUNT = ? WHERE SEQ_NAME = ? AND SEQ_COUNT < ?";
+    private static final String SEQUENCE_COUNT = "SELECT SEQ_COUNT FROM SEQUENCE WHERE SEQ_NAME = ?";
+    private static final String INSERT_SEQUENCE = "INSERT INTO SEQUENCE (SEQ_NAME, SEQ_COUNT) VALUES (?, ?)";
+
+    /**
+     * Usage: {@code StaffMigration SOURCE TARGET CHECKPOINT-FILE [ROWS-PER-SECOND [BATCH-SIZE]]}
+     * where SOURCE and TARGET are SINGLE_TABLE, JOINED or TABLE_PER_CLASS.
+     * Exits with 1 when source and target differ in a count or a row.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: StaffMigration SOURCE TARGET CHECKPOINT-FILE [ROWS-PER-SECOND [BATCH-SIZE]]");
+            System.exit(2);
+        }
+        StaffSchema source = StaffSchema.valueOf(args[0]);
+        StaffSchema target = StaffSchema.valueOf(args[1]);
+        MigrationCheckpoint checkpoint = MigrationCheckpoint.open(Paths.get(args[2]), source, target);
+        double rowsPerSecond = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        int batchSize = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_BATCH_SIZE;
+        Map<String, Object> writing = new HashMap<>();
+        writing.put(PersistenceUnitProperties.BATCH_WRITING, BatchWriting.JDBC);
+        writing.put(PersistenceUnitProperties.BATCH_WRITING_SIZE, String.valueOf(batchSize));
+        EntityManagerFactory sourceEmf = null;
+        EntityManagerFactory targetEmf = null;
+        boolean verified;
+        try {
+            sourceEmf = Persistence.createEntityManagerFactory(source.getPersistenceUnit());
+            targetEmf = Persistence.createEntityManagerFactory(target.getPersistenceUnit(), writing);
+            MigrationReport report = new StaffMigration(source, sourceEmf, target, targetEmf, checkpoint)
+                    .run(batchSize, rowsPerSecond);
+            System.out.println(report);
+            verified = report.isVerified();
+        } finally {
+            if (targetEmf != null) {
+                targetEmf.close();
+            }
+            if (sourceEmf != null) {
+                sourceEmf.close();
+            }
+        }
+        System.exit(verified ? 0 : 1);
+    }
+
+    private final StaffSchema source;
+    private final EntityManagerFactory sourceEmf;
+    private final StaffSchema target;
+    private final EntityManagerFactory targetEmf;
+    private final MigrationCheckpoint checkpoint;
+    private volatile boolean stopRequested;
+
+    public StaffMigration(StaffSchema source, EntityManagerFactory sourceEmf, StaffSchema target,
+            EntityManagerFactory targetEmf, MigrationCheckpoint checkpoint) {
+        if (source == target) {
+            throw new IllegalArgumentException("Source and target are both " + source);
+        }
+        this.source = source;
+        this.sourceEmf = sourceEmf;
+        this.target = target;
+        this.targetEmf = targetEmf;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Makes {@link #run} throw an InterruptedException after the batch it is
+     * writing, or after its first batch when it has not started yet. The
+     * checkpoint then points after that batch. Interrupting the thread that
+     * runs the migration does the same with the Derby network client, but
+     * embedded Derby closes the connection of an interrupted thread.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    public MigrationReport run() throws InterruptedException {
+        return run(DEFAULT_BATCH_SIZE, 0);
+    }
+
+    /**
+     * Copies everything after the checkpoint in batches of {@code batchSize}
+     * rows, at most {@code rowsPerSecond} rows per second (0 for no limit).
+     * The batch size doubles as the cursor fetch size. A run that fails or
+     * is interrupted leaves the checkpoint at the last committed batch. The
+     * closing comparison reads the source again under the same throttle.
+     */
+    public MigrationReport run(int batchSize, double rowsPerSecond) throws InterruptedException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        final long start = System.nanoTime();
+        Throttle throttle = new Throttle(rowsPerSecond);
+        Map<StaffKind, Long> copied = new EnumMap<>(StaffKind.class);
+        Map<StaffKind, Long> skipped = new EnumMap<>(StaffKind.class);
+        long read;
+        do {
+            read = 0;
+            for (StaffKind kind : StaffKind.values()) {
+                read += copy(kind, batchSize, throttle, copied, skipped);
+            }
+        } while (read > 0);
+        advanceSequence();
+        Map<StaffKind, Long> sourceCounts = source.count(sourceEmf);
+        Map<StaffKind, Long> targetCounts = target.count(targetEmf);
+        Map<StaffKind, Long> differing = new EnumMap<>(StaffKind.class);
+        for (StaffKind kind : StaffKind.values()) {
+            differing.put(kind, compare(kind, batchSize, throttle));
+        }
+        return new MigrationReport(copied, skipped, sourceCounts, targetCounts, differing,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * One pass over the rows of {@code kind} after the checkpoint; returns
+     * the number of rows read.
+     */
+    private long copy(StaffKind kind, int batchSize, Throttle throttle, Map<StaffKind, Long> copied,
+            Map<StaffKind, Long> skipped) throws InterruptedException {
+        long read = 0;
+        List<StaffRecord> batch = new ArrayList<>(batchSize);
+        try (Stream<StaffRecord> records = read(source, sourceEmf, kind, checkpoint.getLastId(kind), batchSize)) {
+            Iterator<StaffRecord> it = records.iterator();
+            while (it.hasNext()) {
+                batch.add(it.next());
+                if (batch.size() == batchSize || !it.hasNext()) {
+                    throttle.acquire(batch.size());
+                    int written = write(kind, batch);
+                    checkpoint.advance(kind, batch.get(batch.size() - 1).getId());
+                    checkpoint.save();
+                    read += batch.size();
+                    copied.merge(kind, (long) written, Long::sum);
+                    skipped.merge(kind, (long) (batch.size() - written), Long::sum);
+                    batch.clear();
+                    if (stopRequested || Thread.interrupted()) {
+                        throw new InterruptedException("Staff migration stopped at " + checkpoint);
+                    }
+                }
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Reads the rows of {@code kind} from source and target side by side in
+     * id order and returns how many differ: missing on one side, or with a
+     * column that does not match.
+     */
+    private long compare(StaffKind kind, int fetchSize, Throttle throttle) throws InterruptedException {
+        long differing = 0;
+        long read = 0;
+        try (Stream<StaffRecord> sourceRecords = read(source, sourceEmf, kind, null, fetchSize);
+                Stream<StaffRecord> targetRecords = read(target, targetEmf, kind, null, fetchSize)) {
+            Iterator<StaffRecord> sourceIt = sourceRecords.iterator();
+            Iterator<StaffRecord> targetIt = targetRecords.iterator();
+            StaffRecord inSource = sourceIt.hasNext() ? sourceIt.next() : null;
+            StaffRecord inTarget = targetIt.hasNext() ? targetIt.next() : null;
+            while (inSource != null || inTarget != null) {
+                int order = inSource == null ? 1
+                        : inTarget == null ? -1
+                        : inSource.getId().compareTo(inTarget.getId());
+                if (order != 0 || !inSource.equals(inTarget)) {
+                    differing++;
+                }
+                if (order <= 0) {
+                    if (++read % fetchSize == 0) {
+                        throttle.acquire(fetchSize);
+                    }
+                    inSource = sourceIt.hasNext() ? sourceIt.next() : null;
+                }
+                if (order >= 0) {
+                    inTarget = targetIt.hasNext() ? targetIt.next() : null;
+                }
+            }
+        }
+        return differing;
+    }
+
+    /**
+     * Streams the rows of exactly {@code kind} in {@code schema} with an id
+     * above {@code afterId} (all rows when null), in id order, as they are
+     * in the database and without filling its shared cache.
+     */
+    private static Stream<StaffRecord> read(StaffSchema schema, EntityManagerFactory emf, StaffKind kind,
+            Long afterId, int fetchSize) {
+        EntityManager em = emf.createEntityManager();
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Object> cq = cb.createQuery();
+        Root<?> rt = cq.from(schema.entityClass(kind));
+        Path<Long> id = rt.get("id");
+        List<Predicate> where = new ArrayList<>();
+        if (afterId != null) {
+            where.add(cb.greaterThan(id, afterId));
+        }
+        Predicate exactly = schema.exactly(cb, rt, kind);
+        if (exactly != null) {
+            where.add(exactly);
+        }
+        cq.select(rt).where(where.toArray(new Predicate[where.size()])).orderBy(cb.asc(id));
+        Query q = em.createQuery(cq);
+        q.setHint(QueryHints.READ_ONLY, HintValues.TRUE);
+        q.setHint(QueryHints.REFRESH, HintValues.TRUE);
+        q.setHint(QueryHints.CACHE_STORE_MODE, CacheStoreMode.BYPASS);
+        return EntityCursors.<Object>stream(em, q, fetchSize)
+                .map(schema::toRecord)
+                .filter((record) -> record.getKind() == kind);
+    }
+
+    /**
+     * Persists the records of {@code batch} that are not in the target yet in
+     * one transaction; returns how many were written.
+     */
+    private int write(StaffKind kind, List<StaffRecord> batch) {
+        EntityManager em = null;
+        try {
+            em = targetEmf.createEntityManager();
+            Set<Long> existing = existingIds(em, kind, batch.get(0).getId(), batch.get(batch.size() - 1).getId());
+            em.getTransaction().begin();
+            int written = 0;
+            for (StaffRecord record : batch) {
+                if (!existing.contains(record.getId())) {
+                    em.persist(target.toEntity(record));
+                    written++;
+                }
+            }
+            em.flush();
+            em.clear();
+            em.getTransaction().commit();
+            return written;
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+
+    private Set<Long> existingIds(EntityManager em, StaffKind kind, Long first, Long last) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+        Root<?> rt = cq.from(target.entityClass(kind));
+        Path<Long> id = rt.get("id");
+        cq.select(id).where(cb.between(id, first, last));
+        return new HashSet<>(em.createQuery(cq).getResultList());
+    }
+
+    /**
+     * Moves the id generator of the target past the largest copied id, so
+     * the target does not hand out an id that was taken over from the source.
+     * The copy persists explicit ids and never draws from the generator, so
+     * its row may not exist yet; it is inserted then.
+     */
+    private void advanceSequence() {
+        long lastId = 0;
+        for (StaffKind kind : StaffKind.values()) {
+            Long id = checkpoint.getLastId(kind);
+            if (id != null) {
+                lastId = Math.max(lastId, id);
+            }
+        }
+        if (lastId == 0) {
+            return;
+        }
+        EntityManager em = null;
+        try {
+            em = targetEmf.createEntityManager();
+            em.getTransaction().begin();
+            int advanced = em.createNativeQuery(ADVANCE_SEQUENCE)
+                    .setParameter(1, lastId)
+                    .setParameter(2, target.getSequenceName())
+                    .setParameter(3, lastId)
+                    .executeUpdate();
+            if (advanced == 0 && em.createNativeQuery(SEQUENCE_COUNT)
+                    .setParameter(1, target.getSequenceName())
+                    .getResultList().isEmpty()) {
+                em.createNativeQuery(INSERT_SEQUENCE)
+                        .setParameter(1, target.getSequenceName())
+                        .setParameter(2, lastId)
+                        .executeUpdate();
+            }
+            em.getTransaction().commit();
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.migration;
+
+import java.util.Objects;
+
+/**
+ * A staff member detached from any inheritance strategy: the columns of
+ * every kind in one immutable value, with {@code null} for the columns that
+ * do not belong to its kind.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public final class StaffRecord {
+
+    private final StaffKind kind;
+    private final Long id;
+    private final String sname;
+    private final String qualification;
+    private final String subjectexpertise;
+    private final String areaexpertise;
+
+    private StaffRecord(StaffKind kind, Long id, String sname, String qualification, String subjectexpertise,
+            String areaexpertise) {
+        this.kind = kind;
+        this.id = id;
+        this.sname = sname;
+        this.qualification = qualification;
+        this.subjectexpertise = subjectexpertise;
+        this.areaexpertise = areaexpertise;
+    }
+
+    public static StaffRecord staff(Long id, String sname) {
+        return new StaffRecord(StaffKind.STAFF, id, sname, null, null, null);
+    }
+
+    public static StaffRecord teachingStaff(Long id, String sname, String qualification, String subjectexpertise) {
+        return new StaffRecord(StaffKind.TEACHING_STAFF, id, sname, qualification, subjectexpertise, null);
+    }
+
+    public static StaffRecord nonTeachingStaff(Long id, String sname, String areaexpertise) {
+        return new StaffRecord(StaffKind.NON_TEACHING_STAFF, id, sname, null, null, areaexpertise);
+    }
+
+    public StaffKind getKind() {
+        return kind;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getSname() {
+        return sname;
+    }
+
+    public String getQualification() {
+        return qualification;
+    }
+
+    public String getSubjectexpertise() {
+        return subjectexpertise;
+    }
+
+    public String getAreaexpertise() {
+        return areaexpertise;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, id, sname, qualification, subjectexpertise, areaexpertise);
+    }
+
+    /**
+     * Records are equal when they have the same kind and the same columns.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof StaffRecord)) {
+            return false;
+        }
+        StaffRecord other = (StaffRecord) object;
+        return kind == other.kind && Objects.equals(id, other.id) && Objects.equals(sname, other.sname)
+                && Objects.equals(qualification, other.qualification)
+                && Objects.equals(subjectexpertise, other.subjectexpertise)
+                && Objects.equals(areaexpertise, other.areaexpertise);
+    }
+
+    @Override
+    public String toString() {
+        return "george.migration.StaffRecord[ kind=" + kind + ", id=" + id + " ]";
+    }
+}
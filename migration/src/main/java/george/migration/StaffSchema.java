@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.migration;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+/**
+ * The three Staff hierarchies a migration can read from or write to, each
+ * bound to its own persistence unit and id generator. A schema converts its
+ * entities to and from {@link StaffRecord}s and counts its rows per
+ * {@link StaffKind}.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public enum StaffSchema {
+
+    SINGLE_TABLE("SingleTableStrategyJPA", "STAFF_SEQ", true) {
+        @Override
+        public Class<?> entityClass(StaffKind kind) {
+            switch (kind) {
+                case TEACHING_STAFF:
+                    return george.singletablestrategy.TeachingStaff.class;
+                case NON_TEACHING_STAFF:
+                    return george.singletablestrategy.NonTeachingStaff.class;
+                default:
+                    return george.singletablestrategy.Staff.class;
+            }
+        }
+
+        @Override
+        public StaffRecord toRecord(Object entity) {
+            if (entity instanceof george.singletablestrategy.TeachingStaff) {
+                george.singletablestrategy.TeachingStaff staff = (george.singletablestrategy.TeachingStaff) entity;
+                return StaffRecord.teachingStaff(staff.getId(), staff.getSname(), staff.getQualification(),
+                        staff.getSubjectexpertise());
+            }
+            if (entity instanceof george.singletablestrategy.NonTeachingStaff) {
+                george.singletablestrategy.NonTeachingStaff staff
+                        = (george.singletablestrategy.NonTeachingStaff) entity;
+                return StaffRecord.nonTeachingStaff(staff.getId(), staff.getSname(), staff.getAreaexpertise());
+            }
+            george.singletablestrategy.Staff staff = (george.singletablestrategy.Staff) entity;
+            return StaffRecord.staff(staff.getId(), staff.getSname());
+        }
+
+        @Override
+        public Object toEntity(StaffRecord record) {
+            switch (record.getKind()) {
+                case TEACHING_STAFF:
+                    return new george.singletablestrategy.TeachingStaff(record.getId(), record.getSname(),
+                            record.getQualification(), record.getSubjectexpertise());
+                case NON_TEACHING_STAFF:
+                    return new george.singletablestrategy.NonTeachingStaff(record.getId(), record.getSname(),
+                            record.getAreaexpertise());
+                default:
+                    return new george.singletablestrategy.Staff(record.getId(), record.getSname());
+            }
+        }
+
+        /**
+         * One GROUP BY on the discriminator column.
+         */
+        @Override
+        public Map<StaffKind, Long> count(EntityManagerFactory emf) {
+            Map<Class<? extends george.singletablestrategy.Staff>, Long> byType
+                    = new george.singletablestrategy.service.StaffJpaController(emf).countByType();
+            Map<StaffKind, Long> counts = new EnumMap<>(StaffKind.class);
+            for (StaffKind kind : StaffKind.values()) {
+                counts.put(kind, byType.get(entityClass(kind)));
+            }
+            return Collections.unmodifiableMap(counts);
+        }
+    },
+    JOINED("JoinedTableStrategyJPA", "STAFFJ_SEQ", true) {
+        @Override
+        public Class<?> entityClass(StaffKind kind) {
+            switch (kind) {
+                case TEACHING_STAFF:
+                    return george.joinedtablestrategy.entities.TeachingStaff.class;
+                case NON_TEACHING_STAFF:
+                    return george.joinedtablestrategy.entities.NonTeachingStaff.class;
+                default:
+                    return george.joinedtablestrategy.entities.Staff.class;
+            }
+        }
+
+        @Override
+        public StaffRecord toRecord(Object entity) {
+            if (entity instanceof george.joinedtablestrategy.entities.TeachingStaff) {
+                george.joinedtablestrategy.entities.TeachingStaff staff
+                        = (george.joinedtablestrategy.entities.TeachingStaff) entity;
+                return StaffRecord.teachingStaff(staff.getId(), staff.getSname(), staff.getQualification(),
+                        staff.getSubjectexpertise());
+            }
+            if (entity instanceof george.joinedtablestrategy.entities.NonTeachingStaff) {
+                george.joinedtablestrategy.entities.NonTeachingStaff staff
+                        = (george.joinedtablestrategy.entities.NonTeachingStaff) entity;
+                return StaffRecord.nonTeachingStaff(staff.getId(), staff.getSname(), staff.getAreaexpertise());
+            }
+            george.joinedtablestrategy.entities.Staff staff = (george.joinedtablestrategy.entities.Staff) entity;
+            return StaffRecord.staff(staff.getId(), staff.getSname());
+        }
+
+        @Override
+        public Object toEntity(StaffRecord record) {
+            switch (record.getKind()) {
+                case TEACHING_STAFF:
+                    return new george.joinedtablestrategy.entities.TeachingStaff(record.getId(), record.getSname(),
+                            record.getQualification(), record.getSubjectexpertise());
+                case NON_TEACHING_STAFF:
+                    return new george.joinedtablestrategy.entities.NonTeachingStaff(record.getId(),
+                            record.getSname(), record.getAreaexpertise());
+                default:
+                    return new george.joinedtablestrategy.entities.Staff(record.getId(), record.getSname());
+            }
+        }
+    },
+    TABLE_PER_CLASS("TablePerClassStrategyJPA", "STAFFTPC_SEQ", false) {
+        @Override
+        public Class<?> entityClass(StaffKind kind) {
+            switch (kind) {
+                case TEACHING_STAFF:
+                    return george.tableperclassstrategy.entity.TeachingStaff.class;
+                case NON_TEACHING_STAFF:
+                    return george.tableperclassstrategy.entity.NonTeachingStaff.class;
+                default:
+                    return george.tableperclassstrategy.entity.Staff.class;
+            }
+        }
+
+        @Override
+        public StaffRecord toRecord(Object entity) {
+            if (entity instanceof george.tableperclassstrategy.entity.TeachingStaff) {
+                george.tableperclassstrategy.entity.TeachingStaff staff
+                        = (george.tableperclassstrategy.entity.TeachingStaff) entity;
+                return StaffRecord.teachingStaff(staff.getId(), staff.getSname(), staff.getQualification(),
+                        staff.getSubjectexpertise());
+            }
+            if (entity instanceof george.tableperclassstrategy.entity.NonTeachingStaff) {
+                george.tableperclassstrategy.entity.NonTeachingStaff staff
+                        = (george.tableperclassstrategy.entity.NonTeachingStaff) entity;
+                return StaffRecord.nonTeachingStaff(staff.getId(), staff.getSname(), staff.getAreaexpertise());
+            }
+            george.tableperclassstrategy.entity.Staff staff = (george.tableperclassstrategy.entity.Staff) entity;
+            return StaffRecord.staff(staff.getId(), staff.getSname());
+        }
+
+        @Override
+        public Object toEntity(StaffRecord record) {
+            switch (record.getKind()) {
+                case TEACHING_STAFF:
+                    return new george.tableperclassstrategy.entity.TeachingStaff(record.getId(), record.getSname(),
+                            record.getQualification(), record.getSubjectexpertise());
+                case NON_TEACHING_STAFF:
+                    return new george.tableperclassstrategy.entity.NonTeachingStaff(record.getId(),
+                            record.getSname(), record.getAreaexpertise());
+                default:
+                    return new george.tableperclassstrategy.entity.Staff(record.getId(), record.getSname());
+            }
+        }
+
+        /**
+         * One COUNT per table, in parallel.
+         */
+        @Override
+        public Map<StaffKind, Long> count(EntityManagerFactory emf) {
+            Map<StaffKind, Long> counts = new EnumMap<>(StaffKind.class);
+            try (george.tableperclassstrategy.service.StaffJpaController ctrl
+                    = new george.tableperclassstrategy.service.StaffJpaController(emf)) {
+                for (StaffKind kind : StaffKind.values()) {
+                    Class<? extends george.tableperclassstrategy.entity.Staff> type
+                            = entityClass(kind).asSubclass(george.tableperclassstrategy.entity.Staff.class);
+                    counts.put(kind, (long) ctrl.getStaffCount(Collections
+                            .<Class<? extends george.tableperclassstrategy.entity.Staff>>singletonList(type)));
+                }
+            }
+            return Collections.unmodifiableMap(counts);
+        }
+    };
+
+    private final String persistenceUnit;
+    private final String sequenceName;
+    private final boolean discriminated;
+
+    private StaffSchema(String persistenceUnit, String sequenceName, boolean discriminated) {
+        this.persistenceUnit = persistenceUnit;
+        this.sequenceName = sequenceName;
+        this.discriminated = discriminated;
+    }
+
+    public String getPersistenceUnit() {
+        return persistenceUnit;
+    }
+
+    /**
+     * The row of the id generator in the SEQUENCE table.
+     */
+    public String getSequenceName() {
+        return sequenceName;
+    }
+
+    public abstract Class<?> entityClass(StaffKind kind);
+
+    public abstract StaffRecord toRecord(Object entity);
+
+    public abstract Object toEntity(StaffRecord record);
+
+    /**
+     * Restricts a query on {@code entityClass(kind)} to the rows of exactly
+     * that kind, or returns null when the query needs no restriction: the
+     * subclasses are leaves, and with TABLE_PER_CLASS every class has a table
+     * of its own.
+     */
+    Predicate exactly(CriteriaBuilder cb, Root<?> staff, StaffKind kind) {
+        if (discriminated && kind == StaffKind.STAFF) {
+            return cb.equal(staff.type(), entityClass(kind));
+        }
+        return null;
+    }
+
+    /**
+     * The number of rows of every kind, not counting subclasses.
+     */
+    public Map<StaffKind, Long> count(EntityManagerFactory emf) {
+        Map<StaffKind, Long> counts = new EnumMap<>(StaffKind.class);
+        EntityManager em = emf.createEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            for (StaffKind kind : StaffKind.values()) {
+                CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+                Root<?> rt = cq.from(entityClass(kind));
+                Predicate exactly = exactly(cb, rt, kind);
+                if (exactly != null) {
+                    cq.where(exactly);
+                }
+                cq.select(cb.count(rt));
+                counts.put(kind, em.createQuery(cq).getSingleResult());
+            }
+        } finally {
+            em.close();
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.migration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces a writer to a target number of rows per second. Every call to
+ * {@link #acquire(int)} waits until the rows admitted so far fit the rate
+ * measured from the creation of the throttle, so a slow batch is made up
+ * for by the following ones instead of lowering the average.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+final class Throttle {
+
+    private final double rowsPerSecond;
+    private final long start = System.nanoTime();
+    private long rows;
+
+    /**
+     * A throttle admitting {@code rowsPerSecond} rows per second; 0 admits
+     * everything at once.
+     */
+    Throttle(double rowsPerSecond) {
+        if (rowsPerSecond < 0 || Double.isNaN(rowsPerSecond)) {
+            throw new IllegalArgumentException("rowsPerSecond must not be negative: " + rowsPerSecond);
+        }
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    void acquire(int count) throws InterruptedException {
+        rows += count;
+        if (rowsPerSecond == 0) {
+            return;
+        }
+        long due = start + (long) (rows * 1e9 / rowsPerSecond);
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2015, George Shumakov <george.shumakov@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package george.migration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Migrates a small SINGLE_TABLE population to JOINED, each in an in-memory
+ * Derby database of its own, in batches of {@value #BATCH_SIZE}: stopped
+ * after the first batch and resumed from the checkpoint file, run again
+ * over rows that are already in the target, and compared after the target
+ * was changed behind its back.
+ *
+ * @author George Shumakov <george.shumakov@gmail.com>
+ */
+public class StaffMigrationTest {
+
+    private static final int PER_KIND = 10;
+    private static final int BATCH_SIZE = 4;
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EntityManagerFactory sourceEmf;
+    private EntityManagerFactory targetEmf;
+    private Path checkpointFile;
+    private final Map<StaffKind, List<Long>> sourceIds = new EnumMap<>(StaffKind.class);
+
+    @Before
+    public void createDatabases() throws IOException {
+        int n = DATABASES.incrementAndGet();
+        sourceEmf = createEntityManagerFactory(StaffSchema.SINGLE_TABLE, "StaffMigrationSource" + n);
+        targetEmf = createEntityManagerFactory(StaffSchema.JOINED, "StaffMigrationTarget" + n);
+        checkpointFile = folder.getRoot().toPath().resolve("checkpoint.properties");
+        george.singletablestrategy.service.StaffJpaController staff
+                = new george.singletablestrategy.service.StaffJpaController(sourceEmf);
+        for (StaffKind kind : StaffKind.values()) {
+            sourceIds.put(kind, new ArrayList<>());
+        }
+        // the kinds take turns, so the ids of every kind have gaps
+        for (int i = 0; i < 3 * PER_KIND; i++) {
+            StaffKind kind = StaffKind.values()[i % 3];
+            george.singletablestrategy.Staff entity = (george.singletablestrategy.Staff) StaffSchema.SINGLE_TABLE
+                    .toEntity(record(kind, null, i));
+            staff.create(entity);
+            sourceIds.get(kind).add(entity.getId());
+        }
+    }
+
+    @After
+    public void closeDatabases() {
+        targetEmf.close();
+        sourceEmf.close();
+    }
+
+    @Test
+    public void stoppedMigrationResumesAfterTheLastBatch() throws Exception {
+        StaffMigration stopped = migration();
+        stopped.stop();
+        try {
+            stopped.run(BATCH_SIZE, 0);
+            fail("The interrupted migration ran to the end");
+        } catch (InterruptedException ex) {
+            // stopped after the first committed batch
+        }
+        MigrationCheckpoint saved = MigrationCheckpoint.open(checkpointFile, StaffSchema.SINGLE_TABLE,
+                StaffSchema.JOINED);
+        assertEquals(sourceIds.get(StaffKind.STAFF).get(BATCH_SIZE - 1), saved.getLastId(StaffKind.STAFF));
+        assertNull(saved.getLastId(StaffKind.TEACHING_STAFF));
+        assertEquals(Long.valueOf(BATCH_SIZE), StaffSchema.JOINED.count(targetEmf).get(StaffKind.STAFF));
+
+        MigrationReport report = migration().run(BATCH_SIZE, 0);
+
+        assertEquals(PER_KIND - BATCH_SIZE, report.getCopied(StaffKind.STAFF));
+        assertEquals(PER_KIND, report.getCopied(StaffKind.TEACHING_STAFF));
+        assertEquals(PER_KIND, report.getCopied(StaffKind.NON_TEACHING_STAFF));
+        assertCopiedEverything(report);
+        // the generator row was created with the schema and is raised past the copied ids
+        assertEquals(Long.valueOf(lastSourceId()), sequenceCount());
+        george.joinedtablestrategy.entities.Staff created = new george.joinedtablestrategy.entities.Staff(null, "New");
+        new george.joinedtablestrategy.services.StaffJpaController(targetEmf).create(created);
+        assertTrue(created.getId() > lastSourceId());
+    }
+
+    @Test
+    public void rowsAlreadyInTheTargetAreSkipped() throws Exception {
+        assertCopiedEverything(migration().run(BATCH_SIZE, 0));
+        // a crash between a commit and the checkpoint leaves rows the checkpoint does not know of
+        Files.delete(checkpointFile);
+        deleteSequenceRow();
+
+        MigrationReport report = migration().run(BATCH_SIZE, 0);
+
+        for (StaffKind kind : StaffKind.values()) {
+            assertEquals(kind.name(), 0, report.getCopied(kind));
+            assertEquals(kind.name(), PER_KIND, report.getSkipped(kind));
+        }
+        assertCopiedEverything(report);
+        // the generator row is inserted when the target has none
+        assertEquals(Long.valueOf(lastSourceId()), sequenceCount());
+    }
+
+    @Test
+    public void comparisonCountsTheDifferingRowsPerKind() throws Exception {
+        assertCopiedEverything(migration().run(BATCH_SIZE, 0));
+        EntityManager em = targetEmf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createQuery("UPDATE TeachingStaff t SET t.subjectexpertise = 'Changed' WHERE t.id = :id")
+                    .setParameter("id", sourceIds.get(StaffKind.TEACHING_STAFF).get(3))
+                    .executeUpdate();
+            em.remove(em.find(george.joinedtablestrategy.entities.NonTeachingStaff.class,
+                    sourceIds.get(StaffKind.NON_TEACHING_STAFF).get(5)));
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+        targetEmf.getCache().evictAll();
+
+        MigrationReport report = migration().run(BATCH_SIZE, 0);
+
+        assertEquals(0, report.getRows());
+        assertEquals(0, report.getDiffering(StaffKind.STAFF));
+        assertEquals(1, report.getDiffering(StaffKind.TEACHING_STAFF));
+        assertEquals(1, report.getDiffering(StaffKind.NON_TEACHING_STAFF));
+        assertEquals(PER_KIND - 1, report.getTargetCount(StaffKind.NON_TEACHING_STAFF));
+        assertFalse(report.isVerified());
+    }
+
+    private StaffMigration migration() throws IOException {
+        MigrationCheckpoint checkpoint = MigrationCheckpoint.open(checkpointFile, StaffSchema.SINGLE_TABLE,
+                StaffSchema.JOINED);
+        return new StaffMigration(StaffSchema.SINGLE_TABLE, sourceEmf, StaffSchema.JOINED, targetEmf, checkpoint);
+    }
+
+    private static void assertCopiedEverything(MigrationReport report) {
+        for (StaffKind kind : StaffKind.values()) {
+            assertEquals(kind.name(), PER_KIND, report.getSourceCount(kind));
+            assertEquals(kind.name(), PER_KIND, report.getTargetCount(kind));
+            assertEquals(kind.name(), 0, report.getDiffering(kind));
+        }
+        assertTrue(report.isVerified());
+    }
+
+    private long lastSourceId() {
+        long last = 0;
+        for (List<Long> ids : sourceIds.values()) {
+            last = Math.max(last, ids.get(ids.size() - 1));
+        }
+        return last;
+    }
+
+    private Long sequenceCount() {
+        EntityManager em = targetEmf.createEntityManager();
+        try {
+            Object count = em.createNativeQuery("SELECT SEQ_COUNT FROM SEQUENCE WHERE SEQ_NAME = ?")
+                    .setParameter(1, StaffSchema.JOINED.getSequenceName())
+                    .getSingleResult();
+            return ((Number) count).longValue();
+        } finally {
+            em.close();
+        }
+    }
+
+    private void deleteSequenceRow() {
+        EntityManager em = targetEmf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery("DELETE FROM SEQUENCE WHERE SEQ_NAME = ?")
+                    .setParameter(1, StaffSchema.JOINED.getSequenceName())
+                    .executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    private static StaffRecord record(StaffKind kind, Long id, int i) {
+        switch (kind) {
+            case TEACHING_STAFF:
+                return StaffRecord.teachingStaff(id, "Teacher " + i, "MSc", "Maths");
+            case NON_TEACHING_STAFF:
+                return StaffRecord.nonTeachingStaff(id, "Clerk " + i, "Accounts");
+            default:
+                return StaffRecord.staff(id, "Staff " + i);
+        }
+    }
+
+    private static EntityManagerFactory createEntityManagerFactory(StaffSchema schema, String database) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+        properties.put("javax.persistence.jdbc.url", "jdbc:derby:memory:" + database + ";create=true");
+        return Persistence.createEntityManagerFactory(schema.getPersistenceUnit(), properties);
+    }
+}